@@ -0,0 +1,68 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.freehep.properties.TypedProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups falling through a number of defaults layers.
+ * 
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CascadeBenchmark {
+
+	@Param({ "1", "2", "3", "4", "5" })
+	public int layers;
+
+	private TypedProperties properties;
+
+	@Setup
+	public void setup() {
+		TypedProperties bottom = new TypedProperties();
+		bottom.set("Name", "bottom");
+		bottom.set("pool{threads}", 4);
+		properties = bottom;
+		for (int i = 0; i < layers; i++) {
+			properties = new TypedProperties(properties, false);
+			properties.set("Layer" + i, i);
+		}
+	}
+
+	@Benchmark
+	public String hitInBottom() {
+		return properties.get("Name", "");
+	}
+
+	@Benchmark
+	public int nestedHitInBottom() {
+		return properties.get("pool{threads}", 0);
+	}
+
+	@Benchmark
+	public int missInAllLayers() {
+		return properties.get("Unknown", -1);
+	}
+
+	@Benchmark
+	public int nestedMissInAllLayers() {
+		return properties.get("pool{unknown}", -1);
+	}
+}
@@ -0,0 +1,126 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.benchmarks;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.freehep.properties.PropertyConverter;
+import org.freehep.properties.TypedProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of each registered PropertyConverter, storing a value into and
+ * loading it from its string form.
+ * 
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConverterBenchmark {
+
+	@Param({ "String", "File", "URL", "Integer", "Long", "Float", "Double",
+			"Boolean", "TypedProperties", "List" })
+	public String typeName;
+
+	private Class<?> type;
+	private Class<?> elementType;
+	private Object value;
+	private PropertyConverter<Object> converter;
+	private String key;
+	private Properties stored;
+	private List<String[]> entries;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() throws MalformedURLException {
+		key = "Key";
+		if (typeName.equals("String")) {
+			type = String.class;
+			value = "Mark Donszelmann";
+		} else if (typeName.equals("File")) {
+			type = File.class;
+			value = new File("/tmp/freehep/typed.properties");
+		} else if (typeName.equals("URL")) {
+			type = URL.class;
+			value = new URL("http://freehep.github.com/freehep-typed-properties");
+		} else if (typeName.equals("Integer")) {
+			type = Integer.class;
+			value = 123456;
+		} else if (typeName.equals("Long")) {
+			type = Long.class;
+			value = 1234567890123L;
+		} else if (typeName.equals("Float")) {
+			type = Float.class;
+			value = 3.1415f;
+		} else if (typeName.equals("Double")) {
+			type = Double.class;
+			value = 2.718281828459045;
+		} else if (typeName.equals("Boolean")) {
+			type = Boolean.class;
+			value = true;
+		} else if (typeName.equals("TypedProperties")) {
+			type = TypedProperties.class;
+			elementType = Integer.class;
+			TypedProperties table = new TypedProperties();
+			for (int i = 0; i < 10; i++) {
+				table.set("Key" + i, i);
+			}
+			value = table;
+		} else if (typeName.equals("List")) {
+			type = List.class;
+			elementType = String.class;
+			List<String> list = new ArrayList<String>();
+			for (int i = 0; i < 10; i++) {
+				list.add("Entry" + i);
+			}
+			value = list;
+		} else {
+			throw new IllegalArgumentException(typeName);
+		}
+		converter = (PropertyConverter<Object>) TypedProperties
+				.getConverter(type);
+
+		stored = store();
+		entries = new ArrayList<String[]>();
+		for (String name : stored.stringPropertyNames()) {
+			String fullValue = stored.getProperty(name);
+			entries.add(new String[] { name, fullValue.split(" ", 2)[1] });
+		}
+	}
+
+	@Benchmark
+	public Properties store() {
+		Properties p = new Properties();
+		converter.store(p, key, type, value);
+		return p;
+	}
+
+	@Benchmark
+	public TypedProperties load() {
+		TypedProperties properties = new TypedProperties();
+		Class<?> loadType = elementType != null ? elementType : type;
+		for (String[] entry : entries) {
+			converter.load(properties, entry[0], loadType, entry[1]);
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,86 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.freehep.properties.PropertyKey;
+import org.freehep.properties.TypedProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups of flat and nested keys, by string, through a PropertyKey and on a
+ * snapshot.
+ * 
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GetBenchmark {
+
+	private static final PropertyKey<Integer> NESTED_KEY = PropertyKey.of(
+			"author{address}{number}", Integer.class, -1);
+
+	private TypedProperties properties;
+	private TypedProperties snapshot;
+
+	@Setup
+	public void setup() {
+		properties = new TypedProperties();
+		for (int i = 0; i < 100; i++) {
+			properties.set("Key" + i, i);
+			properties.set("author{address}{Key" + i + "}", i);
+		}
+		properties.set("Name", "Mark Donszelmann");
+		properties.set("Untyped", String.class, "42");
+		properties.set("author{address}{number}", 42);
+		snapshot = properties.snapshot();
+	}
+
+	@Benchmark
+	public String flat() {
+		return properties.get("Name", "");
+	}
+
+	@Benchmark
+	public int flatInt() {
+		return properties.get("Key50", 0);
+	}
+
+	@Benchmark
+	public int untyped() {
+		return properties.get("Untyped", 0);
+	}
+
+	@Benchmark
+	public int nested() {
+		return properties.get("author{address}{number}", 0);
+	}
+
+	@Benchmark
+	public int nestedPropertyKey() {
+		return properties.get(NESTED_KEY);
+	}
+
+	@Benchmark
+	public int nestedSnapshot() {
+		return snapshot.get("author{address}{number}", 0);
+	}
+
+	@Benchmark
+	public int miss() {
+		return properties.get("Unknown", -1);
+	}
+}
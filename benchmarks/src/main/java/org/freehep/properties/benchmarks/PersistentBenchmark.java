@@ -0,0 +1,81 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.freehep.properties.TypedProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading and storing of properties files. Half of the keys are flat, the
+ * other half live in sub tables of ten keys each.
+ * 
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersistentBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	public int keys;
+
+	private File file;
+	private PersistentTypedProperties properties;
+	private int value;
+
+	@Setup
+	public void setup() throws IOException {
+		file = File.createTempFile("PersistentBenchmark", ".properties");
+		properties = new PersistentTypedProperties(file);
+		properties.beginBatch();
+		try {
+			for (int i = 0; i < keys / 2; i++) {
+				properties.set("Key" + i, i);
+				properties.set("table" + (i / 10) + "{Key" + i + "}",
+						"value " + i);
+			}
+		} finally {
+			properties.commit();
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		properties.close();
+		file.delete();
+	}
+
+	@Benchmark
+	public TypedProperties load() throws IOException {
+		PersistentTypedProperties loaded = new PersistentTypedProperties(file,
+				true);
+		loaded.close();
+		return loaded;
+	}
+
+	/**
+	 * A single change, which stores the whole file.
+	 */
+	@Benchmark
+	public void store() {
+		properties.set("Changed", value++);
+	}
+}
@@ -0,0 +1,62 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.benchmarks;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.TimeUnit;
+
+import org.freehep.properties.TypedProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Changes of flat and nested properties with listeners attached.
+ * 
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SetBenchmark {
+
+	@Param({ "0", "1", "10" })
+	public int listeners;
+
+	private TypedProperties properties;
+	private int value;
+
+	@Setup
+	public void setup(final Blackhole blackhole) {
+		properties = new TypedProperties(new TypedProperties(), false);
+		for (int i = 0; i < listeners; i++) {
+			properties.addPropertyChangeListener(new PropertyChangeListener() {
+				public void propertyChange(PropertyChangeEvent evt) {
+					blackhole.consume(evt);
+				}
+			});
+		}
+	}
+
+	@Benchmark
+	public void flat() {
+		properties.set("Key", value++);
+	}
+
+	@Benchmark
+	public void nested() {
+		properties.set("author{address}{number}", value++);
+	}
+}
@@ -0,0 +1,18 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+/**
+ * 
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class DoublePropertyConverter extends SimpleTypePropertyConverter<Double> {
+	@Override
+	public String toString(Double value) {
+		return Double.toString(value);
+	}
+
+	@Override
+	public Double toObject(String value) {
+		return Double.parseDouble(value);
+	}
+}
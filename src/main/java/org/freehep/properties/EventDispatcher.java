@@ -0,0 +1,233 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Delivers change events to listeners on an Executor. Every listener has its
+ * own queue of events, drained by at most one task at a time, so a listener
+ * never receives events concurrently or out of order. Events which queue up
+ * while a listener is busy are merged per key before they are delivered: the
+ * merged event has the old value of the first and the new value of the last
+ * change.
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+class EventDispatcher {
+
+	private final Executor executor;
+	private int pending;
+
+	EventDispatcher(Executor executor) {
+		this.executor = executor;
+	}
+
+	Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Queues events for delivery, and schedules the delivery unless it is
+	 * scheduled already.
+	 */
+	void post(final Delivery delivery, List<TypedPropertyChangeEvent> events) {
+		synchronized (delivery) {
+			delivery.queue.addAll(events);
+			if (delivery.scheduled) {
+				return;
+			}
+			delivery.scheduled = true;
+		}
+
+		synchronized (this) {
+			pending++;
+		}
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					drain(delivery);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			System.err
+					.println("TypedProperties: could not dispatch event, delivering on calling thread");
+			drain(delivery);
+		}
+	}
+
+	private void drain(Delivery delivery) {
+		boolean drained = false;
+		try {
+			List<TypedPropertyChangeEvent> events;
+			while ((events = delivery.take()) != null) {
+				delivery.deliver(merge(events));
+			}
+			drained = true;
+		} finally {
+			if (!drained) {
+				delivery.reset();
+			}
+			synchronized (this) {
+				pending--;
+				if (pending == 0) {
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits until all events posted so far, and those posted by the
+	 * listeners in turn, have been delivered.
+	 *
+	 * @param timeout
+	 *            maximum time to wait in milli seconds
+	 * @return false if the timeout elapsed first
+	 */
+	synchronized boolean awaitQuiescence(long timeout)
+			throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		while (pending > 0) {
+			long left = end - System.currentTimeMillis();
+			if (left <= 0) {
+				return false;
+			}
+			wait(left);
+		}
+		return true;
+	}
+
+	/**
+	 * @return events merged per key, or a single event without key if any of
+	 *         the events has no key and unknown changes
+	 */
+	static List<TypedPropertyChangeEvent> merge(
+			List<TypedPropertyChangeEvent> events) {
+		if (events.size() == 1) {
+			return events;
+		}
+
+		Map<String, TypedPropertyChangeEvent> first = new LinkedHashMap<String, TypedPropertyChangeEvent>();
+		Map<String, TypedPropertyChangeEvent> last = new LinkedHashMap<String, TypedPropertyChangeEvent>();
+		for (TypedPropertyChangeEvent event : events) {
+			if (event.getKey() == null) {
+				if (event.getChanges() == null) {
+					List<TypedPropertyChangeEvent> all = new ArrayList<TypedPropertyChangeEvent>(
+							1);
+					all.add(event);
+					return all;
+				}
+				for (TypedPropertyChangeEvent change : event.getChanges()) {
+					if (!first.containsKey(change.getKey())) {
+						first.put(change.getKey(), change);
+					}
+					last.put(change.getKey(), change);
+				}
+				continue;
+			}
+			if (!first.containsKey(event.getKey())) {
+				first.put(event.getKey(), event);
+			}
+			last.put(event.getKey(), event);
+		}
+
+		List<TypedPropertyChangeEvent> merged = new ArrayList<TypedPropertyChangeEvent>(
+				first.size());
+		for (TypedPropertyChangeEvent event : first.values()) {
+			TypedPropertyChangeEvent end = last.get(event.getKey());
+			merged.add(event == end ? event : new TypedPropertyChangeEvent(
+					(TypedProperties) event.getSource(), event.getKey(), end
+							.getType(), event.oldValue(), end.newValue(),
+					event.isReload() && end.isReload()));
+		}
+		return merged;
+	}
+
+	/**
+	 * @return the event for a listener for all properties of source: the
+	 *         only event, or an event without key for all of them, which is
+	 *         always used for a reload
+	 */
+	static TypedPropertyChangeEvent summarize(TypedProperties source,
+			List<TypedPropertyChangeEvent> events) {
+		boolean reload = true;
+		for (TypedPropertyChangeEvent event : events) {
+			reload &= event.isReload();
+		}
+		return (events.size() == 1) && !reload ? events.get(0)
+				: new TypedPropertyChangeEvent(source, events, reload);
+	}
+
+	/**
+	 * Queue of events for one listener of one table.
+	 */
+	static final class Delivery {
+		private final TypedProperties source;
+		private final PropertyChangeListener listener;
+		private final boolean all;
+		private List<TypedPropertyChangeEvent> queue = new ArrayList<TypedPropertyChangeEvent>();
+		private boolean scheduled;
+
+		/**
+		 * @param source
+		 *            table the listener was added to
+		 * @param listener
+		 *            listener
+		 * @param all
+		 *            true for a listener for all properties, which receives a
+		 *            single event per delivery
+		 */
+		Delivery(TypedProperties source, PropertyChangeListener listener,
+				boolean all) {
+			this.source = source;
+			this.listener = listener;
+			this.all = all;
+		}
+
+		/**
+		 * @return queued events, or null if there are none, after which the
+		 *         delivery needs to be scheduled again
+		 */
+		private synchronized List<TypedPropertyChangeEvent> take() {
+			if (queue.isEmpty()) {
+				scheduled = false;
+				return null;
+			}
+			List<TypedPropertyChangeEvent> events = queue;
+			queue = new ArrayList<TypedPropertyChangeEvent>();
+			return events;
+		}
+
+		private synchronized void reset() {
+			queue.clear();
+			scheduled = false;
+		}
+
+		private void deliver(List<TypedPropertyChangeEvent> events) {
+			if (all) {
+				deliver(summarize(source, events));
+			} else {
+				for (TypedPropertyChangeEvent event : events) {
+					deliver(event);
+				}
+			}
+		}
+
+		private void deliver(TypedPropertyChangeEvent event) {
+			try {
+				listener.propertyChange(event);
+			} catch (RuntimeException e) {
+				// keep delivering to this listener
+				System.err.println("TypedProperties: listener failed on "
+						+ event.getKey());
+				System.err.println(e);
+			}
+		}
+	}
+}
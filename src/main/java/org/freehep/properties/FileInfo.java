@@ -2,8 +2,8 @@
 package org.freehep.properties;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 
@@ -11,11 +11,14 @@ import java.util.List;
  */
 public class FileInfo {
 	private long modifiedTime;
+	private long length;
+	private volatile boolean watched;
 	private List<FileListener> listeners;
 
-	FileInfo(long modifiedTime) {
-		this.modifiedTime = modifiedTime;
-		listeners = new ArrayList<FileListener>(1);
+	FileInfo(File file) {
+		this.modifiedTime = file.exists() ? file.lastModified() : -1;
+		this.length = file.length();
+		listeners = new CopyOnWriteArrayList<FileListener>();
 	}
 
 	void addListener(FileListener fileListener) {
@@ -27,11 +30,21 @@ public class FileInfo {
 		return listeners.size();
 	}
 
-	void check(File file) {
+	boolean isWatched() {
+		return watched;
+	}
+
+	void setWatched(boolean watched) {
+		this.watched = watched;
+	}
+
+	synchronized void check(File file) {
 		long newModifiedTime = file.exists() ? file.lastModified() : -1;
+		long newLength = file.length();
 
-		// Check if file has changed
-		if (newModifiedTime != modifiedTime) {
+		// Check if file has changed, the length catches rewrites within the
+		// resolution of the modified time
+		if ((newModifiedTime != modifiedTime) || (newLength != length)) {
 			// Notify listeners
 			for (FileListener listener : listeners) {
 				if (modifiedTime == -1) {
@@ -43,6 +56,7 @@ public class FileInfo {
 				}
 			}
 			modifiedTime = newModifiedTime;
+			length = newLength;
 		}
 	}
 }
@@ -1,14 +1,36 @@
 // Copyright FreeHEP, 2007-2009
 package org.freehep.properties;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Monitors files for changes. The directories of the files are watched by a
+ * java.nio.file.WatchService, so that changes are reported as soon as the
+ * operating system signals them. Files for which this is not possible, for
+ * instance because the file system does not support watching or the
+ * directory does not exist yet, are polled at the polling interval.
+ *
  * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
  */
 public final class FileMonitor {
@@ -18,20 +40,39 @@ public final class FileMonitor {
 	private Timer timer;
 	private Map<File, FileInfo> fileInfo;
 
+	private WatchService watchService;
+	private Thread watcher;
+	private Map<Path, WatchKey> watchKeys;
+	private Map<Path, Set<File>> watchedFiles;
+
 	/**
 	 * Create a file monitor instance with specified polling interval.
-	 * 
+	 *
 	 * @param pollingInterval
 	 *            Polling interval in milli seconds.
 	 */
 	private FileMonitor(long pollingInterval) {
-		fileInfo = new HashMap<File, FileInfo>(1);
+		fileInfo = new ConcurrentHashMap<File, FileInfo>(1);
+		watchKeys = new HashMap<Path, WatchKey>();
+		watchedFiles = new HashMap<Path, Set<File>>();
+
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			watcher = new Thread(new FileMonitorWatcher(), "FileMonitor");
+			watcher.setDaemon(true);
+			watcher.start();
+		} catch (IOException e) {
+			// poll all files
+			watchService = null;
+		} catch (UnsupportedOperationException e) {
+			watchService = null;
+		}
 
 		timer = new Timer(true);
 		timer.schedule(new FileMonitorNotifier(), 0, pollingInterval);
 	}
 
-	public static FileMonitor getInstance(long pollingInterval) {
+	public static synchronized FileMonitor getInstance(long pollingInterval) {
 		FileMonitor monitor = monitors.get(pollingInterval);
 		if (monitor == null) {
 			monitor = new FileMonitor(pollingInterval);
@@ -42,23 +83,32 @@ public final class FileMonitor {
 	}
 
 	/**
-	 * Stop the file monitor polling.
+	 * Stop the file monitor polling and watching.
 	 */
 	public void stop() {
 		timer.cancel();
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				// ignored
+			}
+		}
 	}
 
 	/**
 	 * Add listener to this file monitor.
-	 * 
+	 *
 	 * @param fileListener
 	 *            Listener to add.
 	 */
-	public FileInfo addListener(File file, FileListener fileListener) {
+	public synchronized FileInfo addListener(File file,
+			FileListener fileListener) {
 		FileInfo info = fileInfo.get(file);
 		if (info == null) {
-			info = new FileInfo(file.exists() ? file.lastModified() : -1);
+			info = new FileInfo(file);
 			fileInfo.put(file, info);
+			watch(file);
 		}
 		info.addListener(fileListener);
 		return info;
@@ -66,34 +116,174 @@ public final class FileMonitor {
 
 	/**
 	 * Remove listener from this file monitor.
-	 * 
+	 *
 	 * @param file
 	 *            file for which to remove the listener
 	 * @param fileListener
 	 *            Listener to remove, if null all listeners are removed
 	 */
-	public void removeListener(File file, FileListener fileListener) {
+	public synchronized void removeListener(File file,
+			FileListener fileListener) {
 		FileInfo info = fileInfo.get(file);
 		if (info != null) {
 			int size = fileListener != null ? info.removeListener(fileListener)
 					: 0;
 			if (size == 0) {
 				fileInfo.remove(file);
+				unwatch(file);
+			}
+		}
+	}
+
+	/**
+	 * Registers the directory of file with the watch service, once per
+	 * directory. If this fails the file is polled.
+	 */
+	private void watch(File file) {
+		if (watchService == null) {
+			return;
+		}
+		Path dir = file.getAbsoluteFile().toPath().getParent();
+		if (dir == null) {
+			return;
+		}
+		try {
+			WatchKey key = watchKeys.get(dir);
+			if ((key == null) || !key.isValid()) {
+				key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY,
+						ENTRY_DELETE);
+				watchKeys.put(dir, key);
+			}
+			Set<File> files = watchedFiles.get(dir);
+			if (files == null) {
+				files = new HashSet<File>();
+				watchedFiles.put(dir, files);
+			}
+			files.add(file);
+			fileInfo.get(file).setWatched(true);
+		} catch (IOException e) {
+			// no such directory (yet), poll
+		} catch (UnsupportedOperationException e) {
+			// file system cannot be watched, poll
+		}
+	}
+
+	private void unwatch(File file) {
+		Path dir = file.getAbsoluteFile().toPath().getParent();
+		Set<File> files = watchedFiles.get(dir);
+		if ((files != null) && files.remove(file) && files.isEmpty()) {
+			watchedFiles.remove(dir);
+			WatchKey key = watchKeys.remove(dir);
+			if (key != null) {
+				key.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Checks all files monitored in dir, or just the one named name.
+	 */
+	private void check(Path dir, Path name) {
+		List<File> files;
+		synchronized (this) {
+			Set<File> watched = watchedFiles.get(dir);
+			if (watched == null) {
+				return;
+			}
+			files = new ArrayList<File>(watched);
+		}
+		for (File file : files) {
+			if ((name == null)
+					|| name.equals(file.getAbsoluteFile().toPath()
+							.getFileName())) {
+				check(file);
+			}
+		}
+	}
+
+	private void check(File file) {
+		FileInfo info = fileInfo.get(file);
+		if (info == null) {
+			return;
+		}
+		try {
+			info.check(file);
+		} catch (RuntimeException e) {
+			// keep monitoring the other files
+			System.err.println("FileMonitor: could not check " + file);
+			System.err.println(e);
+		}
+	}
+
+	/**
+	 * Directory of key can no longer be watched, poll its files instead.
+	 */
+	private synchronized void invalidate(Path dir, WatchKey key) {
+		if (watchKeys.get(dir) != key) {
+			return;
+		}
+		watchKeys.remove(dir);
+		Set<File> files = watchedFiles.remove(dir);
+		if (files != null) {
+			for (File file : files) {
+				FileInfo info = fileInfo.get(file);
+				if (info != null) {
+					info.setWatched(false);
+				}
 			}
 		}
 	}
 
 	/**
 	 * This is the timer thread which is executed every n milliseconds according
-	 * to the setting of the file monitor. It investigates the file in question
-	 * and notify listeners if changed.
+	 * to the setting of the file monitor. It investigates the files which
+	 * cannot be watched and notify listeners if changed. It also tries to watch
+	 * these files again, as their directory may have been created.
 	 */
 	private class FileMonitorNotifier extends TimerTask {
 		@Override
 		public void run() {
 			for (File file : new ArrayList<File>(fileInfo.keySet())) {
 				FileInfo info = fileInfo.get(file);
-				info.check(file);
+				if ((info != null) && !info.isWatched()) {
+					check(file);
+					synchronized (FileMonitor.this) {
+						if (fileInfo.get(file) == info) {
+							watch(file);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * This thread waits for events of the watch service and checks the files
+	 * they refer to.
+	 */
+	private class FileMonitorWatcher implements Runnable {
+		public void run() {
+			while (true) {
+				WatchKey key;
+				try {
+					key = watchService.take();
+				} catch (InterruptedException e) {
+					return;
+				} catch (ClosedWatchServiceException e) {
+					return;
+				}
+
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						check(dir, null);
+					} else {
+						check(dir, (Path) event.context());
+					}
+				}
+				if (!key.reset()) {
+					invalidate(dir, key);
+				}
 			}
 		}
 	}
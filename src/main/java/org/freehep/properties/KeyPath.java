@@ -0,0 +1,246 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Parsed form of a property key. A key such as
+ *
+ * <pre>
+ * table{1}{name}
+ * </pre>
+ *
+ * is split once into its segments (table, 1, name), so that lookups can walk
+ * the nested tables without matching the key again. Splitting follows exactly
+ * the key{subkey}rest convention of TypedPropertiesConverter.MAP_PATTERN.
+ * <p>
+ * KeyPaths obtained by compile() are cached per key string and shared.
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+final class KeyPath {
+
+	/**
+	 * Kind of a key, decided by the first '{' or '[' in the key.
+	 */
+	enum Kind {
+		PLAIN, TABLE, LIST
+	}
+
+	private static final int MAX_CACHED = 4096;
+	private static final ConcurrentMap<String, KeyPath> cache = new ConcurrentHashMap<String, KeyPath>();
+
+	private final String key;
+	private final String[] segments;
+	private final Kind kind;
+	private final String listKey;
+	private final int listIndex;
+	private final String listEntryKey;
+
+	private KeyPath(String key) {
+		this.key = key;
+		this.segments = split(key);
+
+		Kind k = Kind.PLAIN;
+		for (int i = 0; i < key.length(); i++) {
+			if (key.charAt(i) == '{') {
+				k = Kind.TABLE;
+				break;
+			} else if (key.charAt(i) == '[') {
+				k = Kind.LIST;
+				break;
+			}
+		}
+		this.kind = k;
+
+		// key[index]...
+		int open = key.indexOf('[');
+		int close = open + 1;
+		while ((close < key.length()) && (key.charAt(close) >= '0')
+				&& (key.charAt(close) <= '9')) {
+			close++;
+		}
+		int index = -1;
+		if ((open > 0) && (close > open + 1) && (close < key.length())
+				&& (key.charAt(close) == ']')
+				&& !hasLineTerminator(key, close + 1)) {
+			try {
+				index = Integer.parseInt(key.substring(open + 1, close));
+			} catch (NumberFormatException e) {
+				// too large, not a list index
+			}
+		}
+		this.listKey = index >= 0 ? key.substring(0, open) : null;
+		this.listIndex = index;
+		this.listEntryKey = index >= 0 ? key.substring(close + 1) : null;
+	}
+
+	/**
+	 * Returns the (shared) parsed form of key.
+	 *
+	 * @param key
+	 *            property key
+	 * @return parsed key
+	 */
+	static KeyPath compile(String key) {
+		KeyPath path = cache.get(key);
+		if (path == null) {
+			path = new KeyPath(key);
+			if (cache.size() < MAX_CACHED) {
+				KeyPath previous = cache.putIfAbsent(key, path);
+				if (previous != null) {
+					path = previous;
+				}
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Splits key{subkey}rest recursively into key, and the segments of
+	 * subkey+rest.
+	 */
+	private static String[] split(String key) {
+		List<String> segments = null;
+		String rest = key;
+		while (true) {
+			int open = rest.indexOf('{');
+			if (open <= 0) {
+				break;
+			}
+			int close = rest.indexOf('}', open + 1);
+			if ((close <= open + 1) || hasLineTerminator(rest, close + 1)) {
+				break;
+			}
+			if (segments == null) {
+				segments = new ArrayList<String>();
+			}
+			segments.add(rest.substring(0, open));
+			rest = rest.substring(open + 1, close) + rest.substring(close + 1);
+		}
+		if (segments == null) {
+			return new String[] { key };
+		}
+		segments.add(rest);
+		return segments.toArray(new String[segments.size()]);
+	}
+
+	/**
+	 * @return true if s contains a character not matched by '.' in a regular
+	 *         expression, from index on.
+	 */
+	private static boolean hasLineTerminator(String s, int index) {
+		for (int i = index; i < s.length(); i++) {
+			switch (s.charAt(i)) {
+			case '\n':
+			case '\r':
+			case '\u0085':
+			case '\u2028':
+			case '\u2029':
+				return true;
+			default:
+				break;
+			}
+		}
+		return false;
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return number of segments, tables plus the final name
+	 */
+	int size() {
+		return segments.length;
+	}
+
+	String get(int index) {
+		return segments[index];
+	}
+
+	/**
+	 * @return last segment, the name of the property in its table
+	 */
+	String getName() {
+		return segments[segments.length - 1];
+	}
+
+	/**
+	 * @return key of the first count segments, spelled as key{subkey}{...}
+	 */
+	String getCanonicalKey(int count) {
+		StringBuilder s = new StringBuilder(segments[0]);
+		for (int i = 1; i < count; i++) {
+			s.append('{').append(segments[i]).append('}');
+		}
+		return s.toString();
+	}
+
+	/**
+	 * @return key spelled as key{subkey}{...}
+	 */
+	String getCanonicalKey() {
+		return segments.length == 1 ? key : getCanonicalKey(segments.length);
+	}
+
+	/**
+	 * Returns the key of a property of a sub table as seen from its parent.
+	 *
+	 * @param table
+	 *            name of the sub table
+	 * @param key
+	 *            key of the property in the sub table, as key or key{...}
+	 * @return table{key} or table{key}{...}
+	 */
+	static String append(String table, String key) {
+		int brace = key.indexOf('{');
+		return brace < 0 ? table + "{" + key + "}" : table + "{"
+				+ key.substring(0, brace) + "}" + key.substring(brace);
+	}
+
+	/**
+	 * @return key of the list for key[index], or null if this is not a list
+	 *         entry
+	 */
+	String getListKey() {
+		return listKey;
+	}
+
+	/**
+	 * @return index for key[index], or -1 if this is not a list entry
+	 */
+	int getListIndex() {
+		return listIndex;
+	}
+
+	/**
+	 * @return rest after key[index], or null if this is not a list entry
+	 */
+	String getListEntryKey() {
+		return listEntryKey;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof KeyPath) && key.equals(((KeyPath) obj).key);
+	}
+
+	@Override
+	public int hashCode() {
+		return key.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return key;
+	}
+}
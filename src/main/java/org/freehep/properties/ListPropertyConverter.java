@@ -5,16 +5,12 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 
  * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
  */
 public class ListPropertyConverter<T> implements PropertyConverter<List<T>> {
-	private static final Pattern ARRAY_PATTERN = Pattern
-			.compile("([^\\[]+)\\[(\\d+)\\](.*)");
 	private Map<Class<?>, PropertyConverter<T>> converters;
 
 	public ListPropertyConverter(Map<Class<?>, PropertyConverter<T>> converters) {
@@ -37,17 +33,17 @@ public class ListPropertyConverter<T> implements PropertyConverter<List<T>> {
 
 	public void load(TypedProperties properties, String key,
 			Class<?> entryType, String value) {
-		Matcher m = ARRAY_PATTERN.matcher(key);
-		if (m.matches()) {
-			String mainKey = m.group(1);
+		KeyPath path = KeyPath.compile(key);
+		if (path.getListIndex() >= 0) {
+			String mainKey = path.getListKey();
 			List<Object> list = properties.get(mainKey, (List<Object>) null);
 			if (list == null) {
 				list = new ArrayList<Object>();
 				properties.setProperty(mainKey, List.class, list);
 			}
 
-			int index = Integer.parseInt(m.group(2));
-			String entryKey = m.group(3);
+			int index = path.getListIndex();
+			String entryKey = path.getListEntryKey();
 			PropertyConverter<?> converter = converters.get(entryType);
 			if (converter == null) {
 				System.err.println("List.load: No Converter defined for '"
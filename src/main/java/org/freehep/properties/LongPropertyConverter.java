@@ -0,0 +1,18 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+/**
+ * 
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class LongPropertyConverter extends SimpleTypePropertyConverter<Long> {
+	@Override
+	public String toString(Long value) {
+		return Long.toString(value);
+	}
+
+	@Override
+	public Long toObject(String value) {
+		return Long.parseLong(value);
+	}
+}
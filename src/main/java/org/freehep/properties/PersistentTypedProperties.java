@@ -3,39 +3,87 @@ package org.freehep.properties;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
-import java.security.DigestInputStream;
-import java.security.DigestOutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.Map.Entry;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
  */
-public class PersistentTypedProperties extends TypedProperties {
+public class PersistentTypedProperties extends TypedProperties implements
+		Closeable {
 
 	private static final String DIGEST_NAME = "MD5";
+	private static Timer writer;
+	private static ConcurrentMap<File, Object> fileLocks = new ConcurrentHashMap<File, Object>();
 	private File propertiesFile;
+	private Map<String, Class<?>> schema;
+	private boolean lazy;
 	private byte[] digest;
-	private boolean storeChanges;
 	private FileMonitor monitor;
 	private FileListener fileListener;
+	private FileListener journalListener;
 	private FileInfo fileInfo;
-	private boolean listenForUpdates;
+	// read by the file monitor and writer threads
+	private volatile boolean listenForUpdates;
+	private volatile long writeDelay;
+	private volatile TimerTask pendingStore;
+	// guards pendingStore and storing, never held while storing
+	private final Object pendingLock = new Object();
+	private int storing;
+	// numbers of the last rendered and the last written content
+	private long rendered;
+	private long written;
+	private long snapshotted;
+	private boolean atomicStore;
+	private PropertiesJournal journal;
+	private PropertiesSnapshot snapshot;
+	private boolean keepSnapshot;
+	private int compactionThreshold = 1000;
+	private volatile TimerTask pendingCompaction;
+	private SyncPolicy syncPolicy = SyncPolicy.NONE;
+
+	/**
+	 * How far a store goes to make sure the file survives a crash of the
+	 * system.
+	 */
+	public enum SyncPolicy {
+		/**
+		 * leave writing to disk to the operating system
+		 */
+		NONE,
+		/**
+		 * force the content of the file to disk
+		 */
+		FILE,
+		/**
+		 * force the content of the file and of its directory to disk, so that
+		 * an atomic replacement is durable as well
+		 */
+		FILE_AND_DIRECTORY
+	}
 
 	public PersistentTypedProperties(File propertiesFile) {
 		this(propertiesFile, null, false);
@@ -72,24 +120,93 @@ public class PersistentTypedProperties extends TypedProperties {
 
 	public PersistentTypedProperties(File propertiesFile,
 			TypedProperties defaults, boolean readOnly, long pollingInterval) {
+		this(propertiesFile, defaults, readOnly, pollingInterval, null);
+	}
+
+	/**
+	 * Creates a persistent TypedProperties from given File if exist, with
+	 * defaults and a schema for untyped values.
+	 * 
+	 * @param propertiesFile
+	 *            file to persist properties into
+	 * @param defaults
+	 *            TypedProperties defaults
+	 * @param readOnly
+	 *            true if the properties cannot be changed
+	 * @param pollingInterval
+	 *            interval in milli seconds to check the file for changes,
+	 *            where it cannot be watched
+	 * @param schema
+	 *            types of untyped values by key, keys not in the schema are
+	 *            loaded as String. If null the type of untyped values is
+	 *            guessed from the value.
+	 */
+	public PersistentTypedProperties(File propertiesFile,
+			TypedProperties defaults, boolean readOnly, long pollingInterval,
+			Map<String, Class<?>> schema) {
+		this(propertiesFile, defaults, readOnly, pollingInterval, schema,
+				false);
+	}
+
+	/**
+	 * Creates a persistent TypedProperties from given File if exist, with
+	 * defaults and a schema for untyped values, optionally loading lazily.
+	 * <p>
+	 * When loading lazily, values of simple types other than String are kept
+	 * as read until they are first asked for, and are then converted once.
+	 * getType() does not convert. A value which cannot be converted is
+	 * reported on first access, rather than on load, and reads as not set.
+	 * Values equal to their default are kept rather than removed.
+	 * 
+	 * @param propertiesFile
+	 *            file to persist properties into
+	 * @param defaults
+	 *            TypedProperties defaults
+	 * @param readOnly
+	 *            true if the properties cannot be changed
+	 * @param pollingInterval
+	 *            interval in milli seconds to check the file for changes,
+	 *            where it cannot be watched
+	 * @param schema
+	 *            types of untyped values by key, or null to guess them
+	 * @param lazy
+	 *            true to convert values on first access
+	 */
+	public PersistentTypedProperties(File propertiesFile,
+			TypedProperties defaults, boolean readOnly, long pollingInterval,
+			Map<String, Class<?>> schema, boolean lazy) {
 		super(defaults, readOnly);
 		this.propertiesFile = propertiesFile;
+		this.schema = schema;
+		this.lazy = lazy;
+		snapshot = new PropertiesSnapshot(new File(propertiesFile.getPath()
+				+ ".tpbin"));
 
-		storeChanges = false;
 		try {
 			load(propertiesFile);
-		} catch (IOException e) {
+		} catch (FileNotFoundException e) {
 			// ignore non existing files
+		} catch (IOException e) {
+			System.err.println("Could not load " + propertiesFile);
+			System.err.println(e);
 		} catch (NoSuchAlgorithmException e) {
 			System.err
 					.println("PersistentTypedProperties: cannot find MD5 digest");
 		}
-		storeChanges = true;
 
 		addPropertyChangeListener(new PropertyChangeListener() {
 			public void propertyChange(PropertyChangeEvent evt) {
+				TypedPropertyChangeEvent event = (TypedPropertyChangeEvent) evt;
 				try {
-					if (storeChanges) {
+					// a reload brings in what the file holds already
+					if (event.isReload()) {
+						return;
+					}
+					if (journal != null) {
+						journal(event);
+					} else if (writeDelay > 0) {
+						storeLater();
+					} else {
 						store();
 					}
 				} catch (IOException e) {
@@ -107,11 +224,13 @@ public class PersistentTypedProperties extends TypedProperties {
 		monitor = FileMonitor.getInstance(pollingInterval);
 		fileListener = new FileListener() {
 			private boolean changed(File file) {
+				if (pendingStore != null) {
+					// our own changes will overwrite the file shortly
+					return false;
+				}
 				boolean loaded = false;
 				try {
-					storeChanges = false;
 					loaded = load(file);
-					storeChanges = true;
 				} catch (IOException e) {
 					System.err.println("Could not (re)load " + file);
 				} catch (NoSuchAlgorithmException e) {
@@ -146,6 +265,34 @@ public class PersistentTypedProperties extends TypedProperties {
 						+ " unexpected error 'fileRemoved' " + file);
 			}
 		};
+		journalListener = new FileListener() {
+			private void changed() {
+				PropertiesJournal j = journal;
+				if (!listenForUpdates || (j == null) || !j.isChanged()) {
+					// no records of other instances
+					return;
+				}
+				try {
+					reload();
+					System.err.println(j.getFile() + " changed, reloaded");
+				} catch (IOException e) {
+					System.err.println("Could not (re)load " + j.getFile());
+				}
+			}
+
+			public void fileCreated(File file) {
+				changed();
+			}
+
+			public void fileChanged(File file) {
+				changed();
+			}
+
+			public void fileRemoved(File file) {
+				// journal mode was switched off, after compacting the
+				// journal into the properties file
+			}
+		};
 		listenForUpdates = true;
 		fileInfo = monitor.addListener(propertiesFile, fileListener);
 	}
@@ -154,133 +301,835 @@ public class PersistentTypedProperties extends TypedProperties {
 		return propertiesFile;
 	}
 
+	/**
+	 * Sets write-behind mode. With a delay larger than 0 changes are no longer
+	 * stored on the thread which makes them, but by a background thread, at
+	 * most once per delay. Changes within that window are written together.
+	 * Use flush() to make sure all changes are stored. While changes are
+	 * pending, changes made to the file by others are not loaded.
+	 * <p>
+	 * A delay of 0 (the default) stores every change immediately.
+	 * 
+	 * @param delay
+	 *            time in milli seconds to collect changes before storing them
+	 */
+	public void setWriteBehind(long delay) {
+		if (delay < 0) {
+			throw new IllegalArgumentException("Negative delay: " + delay);
+		}
+		writeDelay = delay;
+		if (delay == 0) {
+			try {
+				flush();
+			} catch (IOException e) {
+				System.err.println("Could not persist " + propertiesFile);
+				System.err.println(e);
+			}
+		}
+	}
+
+	public long getWriteBehind() {
+		return writeDelay;
+	}
+
+	/**
+	 * Stores all pending changes, when in write-behind mode.
+	 * 
+	 * @throws IOException
+	 *             thrown if the changes cannot be persisted
+	 */
+	public void flush() throws IOException {
+		synchronized (pendingLock) {
+			// a store in progress may have rendered the content before the
+			// latest changes, so store again
+			if ((pendingStore == null) && (storing == 0)) {
+				return;
+			}
+			if (pendingStore != null) {
+				pendingStore.cancel();
+				pendingStore = null;
+			}
+		}
+		try {
+			store();
+		} catch (NoSuchAlgorithmException e) {
+			System.err
+					.println("PersistentTypedProperties: cannot find MD5 digest");
+		}
+	}
+
+	/**
+	 * Stores all pending changes and stops listening for changes to the file.
+	 * Changes made after close() are stored immediately.
+	 * 
+	 * @throws IOException
+	 *             thrown if the changes cannot be persisted
+	 */
+	public void close() throws IOException {
+		writeDelay = 0;
+		try {
+			flush();
+			if (journal != null) {
+				journal.close();
+			}
+		} finally {
+			monitor.removeListener(propertiesFile, fileListener);
+			if (journal != null) {
+				monitor.removeListener(journal.getFile(), journalListener);
+			}
+		}
+	}
+
+	private void storeLater() {
+		synchronized (pendingLock) {
+			if (pendingStore != null) {
+				return;
+			}
+			pendingStore = new TimerTask() {
+				@Override
+				public void run() {
+					storePending(this);
+				}
+			};
+			getWriter().schedule(pendingStore, writeDelay);
+		}
+	}
+
+	private void storePending(TimerTask task) {
+		synchronized (pendingLock) {
+			if (pendingStore != task) {
+				// flushed in the mean time
+				return;
+			}
+			pendingStore = null;
+			storing++;
+		}
+		try {
+			store();
+		} catch (IOException e) {
+			System.err.println("Could not persist " + propertiesFile);
+			System.err.println(e);
+		} catch (NoSuchAlgorithmException e) {
+			System.err
+					.println("PersistentTypedProperties: cannot find MD5 digest");
+		} catch (RuntimeException e) {
+			// do not kill the writer thread, try again later
+			System.err.println("Could not persist " + propertiesFile);
+			System.err.println(e);
+			storeLater();
+		} finally {
+			synchronized (pendingLock) {
+				storing--;
+			}
+		}
+	}
+
+	private static synchronized Timer getWriter() {
+		if (writer == null) {
+			writer = new Timer("PersistentTypedProperties writer", true);
+		}
+		return writer;
+	}
+
+	/**
+	 * Sets atomic store mode. In this mode the properties are written to a
+	 * temporary file which then replaces the file, rather than being written
+	 * into the file itself. Readers, also those in other processes, then never
+	 * see a truncated or half written file.
+	 * 
+	 * @param atomicStore
+	 *            true to replace the file atomically
+	 */
+	public void setAtomicStore(boolean atomicStore) {
+		this.atomicStore = atomicStore;
+	}
+
+	public boolean isAtomicStore() {
+		return atomicStore;
+	}
+
+	/**
+	 * Sets the policy for forcing stored properties to disk, by default NONE.
+	 * 
+	 * @param syncPolicy
+	 *            policy to use
+	 */
+	public void setSyncPolicy(SyncPolicy syncPolicy) {
+		if (syncPolicy == null) {
+			throw new NullPointerException("syncPolicy");
+		}
+		this.syncPolicy = syncPolicy;
+	}
+
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	/**
+	 * Sets snapshot mode. In this mode a binary snapshot of the properties
+	 * file is kept next to it (file.tpbin), and updated whenever the file is
+	 * stored or reloaded. Loading the file uses the snapshot rather than
+	 * reading and parsing the file, as long as the file has the length and
+	 * modification time the snapshot was made of; the file is then checked in
+	 * the background. This is true in any mode, so readers of a large file
+	 * benefit from a snapshot kept by its writer.
+	 * <p>
+	 * Switching snapshot mode off removes the snapshot.
+	 * 
+	 * @param enable
+	 *            true to keep a snapshot
+	 * @throws IOException
+	 *             thrown if the snapshot cannot be written
+	 */
+	public void setSnapshot(boolean enable) throws IOException {
+		keepSnapshot = enable;
+		if (!enable) {
+			snapshot.delete();
+			return;
+		}
+		if (propertiesFile.exists()) {
+			try {
+				long modified = propertiesFile.lastModified();
+				ByteBuffer bytes = read(propertiesFile);
+				PropertiesSnapshot.Recorder recorder = new PropertiesSnapshot.Recorder(
+						null);
+				PropertiesReader.read(bytes.duplicate(), recorder);
+				snapshot.write(recorder, digest(bytes), bytes.limit(),
+						modified);
+			} catch (NoSuchAlgorithmException e) {
+				System.err
+						.println("PersistentTypedProperties: cannot find MD5 digest");
+			}
+		}
+	}
+
+	public boolean isSnapshot() {
+		return keepSnapshot;
+	}
+
+	/**
+	 * Sets journal mode. In this mode a change is not stored by rewriting the
+	 * whole properties file, but appended as a small record to a journal next
+	 * to it (file.journal). Once the journal holds more records than the
+	 * compaction threshold, it is compacted into the properties file in the
+	 * background. Loading the file, now and when it or the journal changes,
+	 * replays the journal on top of it. Every user of the file should
+	 * therefore use journal mode.
+	 * <p>
+	 * Switching journal mode off compacts and removes the journal. A read-only
+	 * instance only replays the journal; it never creates, cuts or removes it.
+	 * 
+	 * @param enable
+	 *            true to use a journal
+	 * @throws IOException
+	 *             thrown if the journal cannot be read or compacted
+	 */
+	public void setJournal(boolean enable) throws IOException {
+		if (enable && (journal == null)) {
+			flush();
+			journal = new PropertiesJournal(new File(propertiesFile.getPath()
+					+ ".journal"));
+			reload();
+			monitor.addListener(journal.getFile(), journalListener);
+		} else if (!enable && (journal != null)) {
+			compact();
+			monitor.removeListener(journal.getFile(), journalListener);
+			journal.close();
+			if (!isReadOnly()) {
+				journal.getFile().delete();
+			}
+			journal = null;
+		}
+	}
+
+	public boolean isJournal() {
+		return journal != null;
+	}
+
+	/**
+	 * Sets the number of journal records after which the journal is compacted,
+	 * by default 1000.
+	 * 
+	 * @param records
+	 *            number of records
+	 */
+	public void setCompactionThreshold(int records) {
+		compactionThreshold = records;
+	}
+
+	public int getCompactionThreshold() {
+		return compactionThreshold;
+	}
+
+	/**
+	 * Stores all properties in the file and empties the journal, when in
+	 * journal mode. The journal is replayed first, as it may hold records
+	 * of other instances, and stays locked against them until the records
+	 * which were replayed are removed.
+	 * 
+	 * @throws IOException
+	 *             thrown if the properties cannot be persisted
+	 */
+	public void compact() throws IOException {
+		PropertiesJournal j = journal;
+		if ((j == null) || isReadOnly()) {
+			return;
+		}
+		synchronized (lockFor(j.getFile())) {
+			j.lock();
+			try {
+				pendingCompaction = null;
+				reload();
+				long applied = j.length();
+				try {
+					store();
+				} catch (NoSuchAlgorithmException e) {
+					System.err
+							.println("PersistentTypedProperties: cannot find MD5 digest");
+					return;
+				}
+				j.truncate(applied);
+			} finally {
+				j.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Append the changes of event, which are seen from this table and so
+	 * carry full keys, to the journal. Changes made through a sub table
+	 * arrive here as well.
+	 */
+	private void journal(TypedPropertyChangeEvent event) throws IOException {
+		if (event.getKey() != null) {
+			journal(event.getKey(), event.oldValue(), event.getNewValue());
+		} else if (event.getChanges() != null) {
+			for (TypedPropertyChangeEvent change : event.getChanges()) {
+				journal(change);
+			}
+		} else {
+			// unknown changes, store all properties
+			compact();
+		}
+	}
+
+	/**
+	 * Append the change to key to the journal.
+	 */
+	private void journal(String key, Object oldValue, Object value) {
+		Properties p = new Properties();
+		if (value != null) {
+			storeValue(p, key, value);
+		}
+		if ((oldValue == null) && p.isEmpty()) {
+			// a new, still empty sub table, which its entries will follow
+			return;
+		}
+		Map<String, String> entries = new TreeMap<String, String>();
+		for (String entryKey : p.stringPropertyNames()) {
+			entries.put(entryKey, p.getProperty(entryKey));
+		}
+
+		try {
+			synchronized (lockFor(journal.getFile())) {
+				journal.lock();
+				try {
+					journal.append(key, entries, syncPolicy != SyncPolicy.NONE);
+				} finally {
+					journal.unlock();
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Could not journal " + key + " into "
+					+ journal.getFile());
+			System.err.println(e);
+		}
+
+		if ((journal.size() >= compactionThreshold)
+				&& (pendingCompaction == null)) {
+			pendingCompaction = new TimerTask() {
+				@Override
+				public void run() {
+					try {
+						compact();
+					} catch (IOException e) {
+						System.err.println("Could not compact "
+								+ journal.getFile());
+						System.err.println(e);
+					} catch (RuntimeException e) {
+						System.err.println("Could not compact "
+								+ journal.getFile());
+						System.err.println(e);
+					}
+				}
+			};
+			getWriter().schedule(pendingCompaction, 0);
+		}
+	}
+
 	@Override
 	protected void finalize() throws Throwable {
 		monitor.removeListener(propertiesFile, fileListener);
+		if (journal != null) {
+			monitor.removeListener(journal.getFile(), journalListener);
+		}
 		super.finalize();
 	}
 
 	private boolean load(File file) throws IOException,
 			NoSuchAlgorithmException {
-		Properties p = new Properties();
-		MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_NAME);
-		FileInputStream fis = new FileInputStream(file);
-		FileChannel channel = fis.getChannel();
-		FileLock lock = channel.lock(0L, Long.MAX_VALUE, true);
-		DigestInputStream dis = new DigestInputStream(fis, messageDigest);
-		try {
-			p.load(dis);
-		} finally {
-			lock.release();
-			dis.close();
-			fis.close();
-		}
-		byte[] newDigest = messageDigest.digest();
-		if (Arrays.equals(newDigest, digest)) {
+		return load(file, true);
+	}
+
+	/**
+	 * Loads file, unless it did not change since the last load. The file is
+	 * locked only while its bytes are copied, not while they are parsed. If
+	 * the snapshot was made of the file with its current length and
+	 * modification time, the snapshot is loaded instead, and the file is
+	 * checked in the background.
+	 * 
+	 * @param useSnapshot
+	 *            false to read the file itself
+	 * @return true if the file was loaded
+	 */
+	private boolean load(File file, boolean useSnapshot) throws IOException,
+			NoSuchAlgorithmException {
+		// load into a new table, which starts empty as removed properties
+		// need to be referring to the defaults, and swap it in when complete
+		final TypedProperties replacement = createReplacement();
+		PropertiesReader.Handler handler = new PropertiesReader.Handler() {
+			public void entry(String key, KeyPath.Kind kind, String typeName,
+					String value) {
+				loadEntry(replacement, key, kind, typeName, value);
+			}
+		};
+
+		PropertiesSnapshot.Contents contents = useSnapshot ? snapshot.read(
+				file.length(), file.lastModified()) : null;
+		if ((contents != null) && Arrays.equals(contents.getDigest(), digest)) {
 			return false;
 		}
+		boolean loadedSnapshot = (contents != null) && contents.load(handler);
+		if (loadedSnapshot) {
+			digest = contents.getDigest();
+		} else {
+			long modified = file.lastModified();
+			ByteBuffer bytes = read(file);
+			byte[] newDigest = digest(bytes);
+			if (Arrays.equals(newDigest, digest)) {
+				return false;
+			}
+			digest = newDigest;
 
-		digest = newDigest;
-
-		// clear all properties, as removed ones need to be referring to the
-		// defaults
-		removeAll();
+			if (keepSnapshot) {
+				PropertiesSnapshot.Recorder recorder = new PropertiesSnapshot.Recorder(
+						handler);
+				PropertiesReader.read(bytes.duplicate(), recorder);
+				writeSnapshot(recorder, newDigest, bytes.limit(), modified);
+			} else {
+				PropertiesReader.read(bytes.duplicate(), handler);
+			}
+		}
 
-		for (Iterator<Entry<Object, Object>> it = p.entrySet().iterator(); it
-				.hasNext();) {
-			Entry<Object, Object> entry = it.next();
-			String key = (String) entry.getKey();
-			String fullValue = (String) entry.getValue();
+		if (journal != null) {
+			replay(replacement);
+		}
+		replaceAll(replacement);
+		if (loadedSnapshot) {
+			// only once in use, so that a correction cannot be overwritten
+			validateLater();
+		}
+		return true;
+	}
 
-			String[] typeValue = fullValue.split(" ", 2);
-			String typeName;
-			String value;
-			switch (typeValue.length) {
-			case 0:
-				typeName = String.class.getName();
-				value = "";
-				break;
-			case 1:
-				if (typeValue[0].equals(String.class.getName())) {
-					// empty typed definition (eg Address=java.lang.String)
-					typeName = String.class.getName();
-					value = "";
-				} else {
-					typeName = guessType(typeValue[0]);
-					value = typeValue[0];
+	/**
+	 * Reads the file in the background, after it was loaded from its
+	 * snapshot, and reloads it if the snapshot was outdated after all. A file
+	 * may be changed without changing its length and modification time.
+	 */
+	private void validateLater() {
+		getWriter().schedule(new TimerTask() {
+			@Override
+			public void run() {
+				if (pendingStore != null) {
+					// our own changes will overwrite the file shortly
+					return;
+				}
+				try {
+					load(propertiesFile, false);
+				} catch (IOException e) {
+					System.err.println("Could not (re)load " + propertiesFile);
+				} catch (NoSuchAlgorithmException e) {
+					System.err.println("Could not (re)load " + propertiesFile);
 				}
-				break;
-			default:
-				typeName = typeValue[0];
-				value = typeValue[1];
-				break;
 			}
+		}, 0);
+	}
 
-			Class<?> type = String.class;
+	/**
+	 * @return the content of file, which is locked only while it is copied
+	 */
+	private static ByteBuffer read(File file) throws IOException {
+		ByteBuffer bytes;
+		synchronized (lockFor(file)) {
+			FileInputStream fis = new FileInputStream(file);
+			FileChannel channel = fis.getChannel();
+			FileLock lock = channel.lock(0L, Long.MAX_VALUE, true);
 			try {
-				type = Class.forName(typeName);
-			} catch (ClassNotFoundException e) {
-				// ignore
-				System.err.println(e);
+				long size = channel.size();
+				if (size > Integer.MAX_VALUE) {
+					throw new IOException(file + " is too large to load ("
+							+ size + " bytes)");
+				}
+				// read in bulk, a mapping would keep the file open until it
+				// is garbage collected
+				bytes = ByteBuffer.allocate((int) size);
+				while (bytes.hasRemaining() && (channel.read(bytes) >= 0)) {
+					// read all
+				}
+				bytes.flip();
+			} finally {
+				lock.release();
+				fis.close();
 			}
+		}
+		return bytes;
+	}
 
-			Class<?> lookupType = type;
-			for (int i = 0; i < key.length(); i++) {
-				if (key.charAt(i) == '{') {
-					lookupType = TypedProperties.class;
-					break;
-				} else if (key.charAt(i) == '[') {
-					lookupType = List.class;
-					break;
-				}
+	private static byte[] digest(ByteBuffer bytes)
+			throws NoSuchAlgorithmException {
+		MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_NAME);
+		messageDigest.update(bytes.array(), 0, bytes.limit());
+		return messageDigest.digest();
+	}
+
+	private void writeSnapshot(PropertiesSnapshot.Recorder recorder,
+			byte[] digest, long length, long modified) {
+		try {
+			snapshot.write(recorder, digest, length, modified);
+		} catch (IOException e) {
+			System.err.println("Could not write snapshot "
+					+ snapshot.getFile());
+			System.err.println(e);
+		}
+	}
+
+	/**
+	 * Load a single line of a properties file.
+	 * 
+	 * @param target
+	 *            table to load the line into
+	 * @param key
+	 *            key of the line
+	 * @param fullValue
+	 *            type and value, or value for untyped files
+	 */
+	private void loadEntry(TypedProperties target, String key,
+			String fullValue) {
+		int space = fullValue.indexOf(' ');
+		if (space < 0) {
+			loadEntry(target, key, KeyPath.compile(key).getKind(), null,
+					fullValue);
+		} else {
+			loadEntry(target, key, KeyPath.compile(key).getKind(), fullValue
+					.substring(0, space), fullValue.substring(space + 1));
+		}
+	}
+
+	/**
+	 * Load a single line of a properties file.
+	 * 
+	 * @param target
+	 *            table to load the line into
+	 * @param key
+	 *            key of the line
+	 * @param kind
+	 *            kind of key
+	 * @param typeName
+	 *            type, or null for an untyped value
+	 * @param value
+	 *            value
+	 */
+	private void loadEntry(TypedProperties target, String key,
+			KeyPath.Kind kind, String typeName, String value) {
+		Class<?> type;
+		if (typeName != null) {
+			type = TypedProperties.lookupType(typeName);
+			if (type == null) {
+				type = String.class;
 			}
-			PropertyConverter<?> converter = TypedProperties.getConverter(lookupType);
-			if (converter == null) {
+		} else if (value.equals(String.class.getName())) {
+			// empty typed definition (eg Address=java.lang.String)
+			type = String.class;
+			value = "";
+		} else if (schema != null) {
+			type = schema.get(key);
+			if (type == null) {
+				type = String.class;
+			}
+		} else {
+			type = guessType(value);
+		}
+
+		if (lazy && (type != String.class) && (kind != KeyPath.Kind.LIST)
+				&& loadRaw(target, key, type, value)) {
+			return;
+		}
+
+		Class<?> lookupType = type;
+		if (kind == KeyPath.Kind.TABLE) {
+			lookupType = TypedProperties.class;
+		} else if (kind == KeyPath.Kind.LIST) {
+			lookupType = List.class;
+		}
+		PropertyConverter<?> converter = TypedProperties.getConverter(lookupType);
+		if (converter == null) {
+			System.err
+					.println("PersistentTypedProperties.load: No Converter defined for '"
+							+ lookupType + "' for '" + key + "'");
+		} else {
+			try {
+				converter.load(target, key, type, value);
+			} catch (Exception e) {
 				System.err
-						.println("PersistentTypedProperties.load: No Converter defined for '"
-								+ lookupType + "' for '" + key + "'");
-			} else {
-				try {
-					converter.load(this, key, type, value);
-				} catch (Exception e) {
-					System.err
-							.println("PersistentTypedProperties.load: Could not load property '"
-									+ key
-									+ "' with type '"
-									+ lookupType.getName() + "'");
-					System.err.println(e);
-				}
+						.println("PersistentTypedProperties.load: Could not load property '"
+								+ key
+								+ "' with type '"
+								+ lookupType.getName() + "'");
+				System.err.println(e);
 			}
 		}
-		return true;
 	}
 
-	private String guessType(String value) {
+	/**
+	 * Loads value of a simple type into target without converting it.
+	 * 
+	 * @return false if type is not a simple type, or key is not a valid table
+	 *         key or an entry of a list in a table, in which case nothing was
+	 *         loaded
+	 */
+	private boolean loadRaw(TypedProperties target, String key,
+			Class<?> type, String value) {
+		PropertyConverter<?> converter = TypedProperties.getConverter(type);
+		KeyPath path = KeyPath.compile(key);
+		if (!(converter instanceof SimpleTypePropertyConverter<?>)) {
+			return false;
+		}
+		if ((path.getKind() == KeyPath.Kind.TABLE)
+				&& ((path.size() < 2) || (KeyPath.compile(path.getName())
+						.getListIndex() >= 0))) {
+			return false;
+		}
 		try {
-			Integer.parseInt(value);
-			return Integer.class.getName();
-		} catch (NumberFormatException nfe) {
+			target.setRawProperty(path, type,
+					(SimpleTypePropertyConverter<?>) converter, value);
+		} catch (Exception e) {
+			System.err
+					.println("PersistentTypedProperties.load: Could not load property '"
+							+ key + "' with type '" + type.getName() + "'");
+			System.err.println(e);
 		}
+		return true;
+	}
 
+	/**
+	 * Loads the file and replays the journal on top of it, also if the file
+	 * did not change.
+	 */
+	private void reload() throws IOException {
+		digest = null;
 		try {
-			Float.parseFloat(value);
-			return Float.class.getName();
-		} catch (NumberFormatException nfe) {
+			load(propertiesFile);
+		} catch (FileNotFoundException e) {
+			TypedProperties replacement = createReplacement();
+			replay(replacement);
+			replaceAll(replacement);
+		} catch (NoSuchAlgorithmException e) {
+			System.err
+					.println("PersistentTypedProperties: cannot find MD5 digest");
+		}
+	}
+
+	/**
+	 * Apply the journal on top of the properties loaded into target.
+	 */
+	private void replay(final TypedProperties target) throws IOException {
+		PropertiesJournal j = journal;
+		synchronized (lockFor(j.getFile())) {
+			j.replay(new PropertiesJournal.Handler() {
+				public void remove(String key) {
+					target.setProperty(key, target.getType(key), null);
+				}
+
+				public void load(String key, String value) {
+					loadEntry(target, key, value);
+				}
+			}, !isReadOnly());
+		}
+	}
+
+	/**
+	 * Guesses the type of an untyped value: Integer if Integer.parseInt would
+	 * accept it, else Float if Float.parseFloat would accept it, else Boolean
+	 * for true or false in any case, else String. The value is classified
+	 * lexically, without throwing exceptions.
+	 */
+	static Class<?> guessType(String value) {
+		if (isInteger(value)) {
+			return Integer.class;
+		}
+
+		if (isFloat(value)) {
+			return Float.class;
 		}
 
 		if (value.equalsIgnoreCase("true")
 				|| value.equalsIgnoreCase("false")) {
-			return Boolean.class.getName();
+			return Boolean.class;
 		}
 
-		return String.class.getName();
+		return String.class;
 	}
 
 	/**
-	 * Persist into given Writer.
+	 * @return true if Integer.parseInt(s) would not throw
+	 */
+	static boolean isInteger(String s) {
+		int length = s.length();
+		if (length == 0) {
+			return false;
+		}
+		int i = 0;
+		long limit = Integer.MAX_VALUE;
+		char first = s.charAt(0);
+		if ((first == '-') || (first == '+')) {
+			if (length == 1) {
+				return false;
+			}
+			if (first == '-') {
+				limit = -(long) Integer.MIN_VALUE;
+			}
+			i++;
+		}
+		long value = 0;
+		for (; i < length; i++) {
+			int digit = Character.digit(s.charAt(i), 10);
+			if (digit < 0) {
+				return false;
+			}
+			value = value * 10 + digit;
+			if (value > limit) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if Float.parseFloat(s) would not throw
+	 */
+	static boolean isFloat(String s) {
+		s = s.trim();
+		int length = s.length();
+		int i = 0;
+		if ((i < length) && ((s.charAt(i) == '-') || (s.charAt(i) == '+'))) {
+			i++;
+		}
+		if (i == length) {
+			return false;
+		}
+		if (s.startsWith("NaN", i)) {
+			return i + 3 == length;
+		}
+		if (s.startsWith("Infinity", i)) {
+			return i + 8 == length;
+		}
+		if ((s.charAt(i) == '0') && (i + 1 < length)
+				&& ((s.charAt(i + 1) == 'x') || (s.charAt(i + 1) == 'X'))) {
+			return isHexFloat(s, i + 2);
+		}
+
+		// digits [. digits] [e [sign] digits] [fFdD]
+		int digits = 0;
+		boolean dot = false;
+		for (; i < length; i++) {
+			char c = s.charAt(i);
+			if ((c >= '0') && (c <= '9')) {
+				digits++;
+			} else if ((c == '.') && !dot) {
+				dot = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			return false;
+		}
+		if ((i < length) && ((s.charAt(i) == 'e') || (s.charAt(i) == 'E'))) {
+			i = skipExponent(s, i + 1);
+			if (i < 0) {
+				return false;
+			}
+		}
+		return isEndOrSuffix(s, i);
+	}
+
+	/**
+	 * Checks the part of a hexadecimal float after 0x: hexdigits [. hexdigits]
+	 * p [sign] digits [fFdD].
+	 */
+	private static boolean isHexFloat(String s, int i) {
+		int length = s.length();
+		int digits = 0;
+		boolean dot = false;
+		for (; i < length; i++) {
+			char c = s.charAt(i);
+			if (((c >= '0') && (c <= '9')) || ((c >= 'a') && (c <= 'f'))
+					|| ((c >= 'A') && (c <= 'F'))) {
+				digits++;
+			} else if ((c == '.') && !dot) {
+				dot = true;
+			} else {
+				break;
+			}
+		}
+		if ((digits == 0) || (i == length)
+				|| ((s.charAt(i) != 'p') && (s.charAt(i) != 'P'))) {
+			return false;
+		}
+		i = skipExponent(s, i + 1);
+		return (i >= 0) && isEndOrSuffix(s, i);
+	}
+
+	/**
+	 * @return index after [sign] digits from i, or -1 if there are no digits
+	 */
+	private static int skipExponent(String s, int i) {
+		int length = s.length();
+		if ((i < length) && ((s.charAt(i) == '-') || (s.charAt(i) == '+'))) {
+			i++;
+		}
+		int start = i;
+		while ((i < length) && (s.charAt(i) >= '0') && (s.charAt(i) <= '9')) {
+			i++;
+		}
+		return i > start ? i : -1;
+	}
+
+	private static boolean isEndOrSuffix(String s, int i) {
+		if (i == s.length()) {
+			return true;
+		}
+		char c = s.charAt(i);
+		return (i == s.length() - 1)
+				&& ((c == 'f') || (c == 'F') || (c == 'd') || (c == 'D'));
+	}
+
+	/**
+	 * Persist into given File.
 	 * 
-	 * @param writer
-	 *            writer to write property file to
+	 * @param file
+	 *            file to write properties to
 	 * @param comments
 	 *            comments to write into the file header
 	 * @throws IOException
@@ -293,51 +1142,162 @@ public class PersistentTypedProperties extends TypedProperties {
 			throw new UnsupportedOperationException();
 		}
 
-		Properties p = new Properties() {
-			private static final long serialVersionUID = 4112578634029874840L;
+		// render without locking the table, which may change meanwhile, as
+		// every change is followed by a store which renders after it. The
+		// numbers make sure that content is not replaced by older content.
+		long number;
+		synchronized (pendingLock) {
+			number = ++rendered;
+		}
+		// the snapshot is made of the properties as they are written
+		PropertiesSnapshot.Recorder recorder = keepSnapshot ? new PropertiesSnapshot.Recorder(
+				null)
+				: null;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+		PropertiesWriter writer = new PropertiesWriter(bytes, recorder);
+		writer.writeHeader(comments);
+		writer.write(this);
+		writer.flush();
+		byte[] content = bytes.toByteArray();
 
-			/**
-			 * make write alphabetic
-			 */
-			@Override
-			public synchronized Enumeration<Object> keys() {
-				SortedSet<Object> set = new TreeSet<Object>();
-				set.addAll(Collections.list(super.keys()));
-				return Collections.enumeration(set);
+		byte[] storedDigest;
+		long modified;
+		synchronized (lockFor(file)) {
+			if (number < written) {
+				// newer content was written in the mean time
+				return;
 			}
-		};
+			write(content, file);
+			written = number;
+			storedDigest = digest;
+			modified = file.lastModified();
+		}
 
-		store(p, null);
+		if (recorder != null) {
+			synchronized (lockFor(snapshot.getFile())) {
+				if (number > snapshotted) {
+					writeSnapshot(recorder, storedDigest, content.length,
+							modified);
+					snapshotted = number;
+				}
+			}
+		}
+	}
+
+	/**
+	 * FileLocks are held by the whole JVM, so instances for the same file
+	 * cannot use them to exclude each other; they synchronize on this object
+	 * instead.
+	 */
+	private static Object lockFor(File file) {
+		File key = file.getAbsoluteFile();
+		Object lock = fileLocks.get(key);
+		if (lock == null) {
+			lock = new Object();
+			Object previous = fileLocks.putIfAbsent(key, lock);
+			if (previous != null) {
+				lock = previous;
+			}
+		}
+		return lock;
+	}
 
-		File dir = file.getParentFile();
+	private void write(byte[] content, File file) throws IOException,
+			NoSuchAlgorithmException {
+		File dir = file.getAbsoluteFile().getParentFile();
 		if (dir != null) {
 			dir.mkdirs();
 		}
 
+		if (atomicStore) {
+			storeAtomic(content, file, dir);
+			return;
+		}
+
+		MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_NAME);
 		FileOutputStream fos = null;
-		DigestOutputStream dos = null;
 		FileLock lock = null;
-		MessageDigest messageDigest = null;
 		try {
 			fos = new FileOutputStream(file);
 			FileChannel channel = fos.getChannel();
 			lock = channel.lock();
-			messageDigest = MessageDigest.getInstance(DIGEST_NAME);
-			dos = new DigestOutputStream(fos, messageDigest);
-			p.store(dos, comments);
+			fos.write(content);
+			if (syncPolicy != SyncPolicy.NONE) {
+				channel.force(true);
+			}
 		} finally {
 			if (lock != null) {
 				lock.release();
 			}
-			if (dos != null) {
-				dos.close();
-			}
 			if (fos != null) {
 				fos.close();
 			}
-			if (messageDigest != null) {
-				digest = messageDigest.digest();
+			digest = messageDigest.digest(content);
+		}
+		if (syncPolicy == SyncPolicy.FILE_AND_DIRECTORY) {
+			sync(dir);
+		}
+	}
+
+	/**
+	 * Writes content into a temporary file next to file, which then replaces
+	 * file in one step, so that readers see either the old or the new content.
+	 */
+	private void storeAtomic(byte[] content, File file, File dir)
+			throws IOException, NoSuchAlgorithmException {
+		File tmp = File.createTempFile("." + file.getName() + ".", ".tmp",
+				dir);
+		boolean moved = false;
+		try {
+			MessageDigest messageDigest = MessageDigest
+					.getInstance(DIGEST_NAME);
+			FileOutputStream fos = new FileOutputStream(tmp);
+			try {
+				fos.write(content);
+				if (syncPolicy != SyncPolicy.NONE) {
+					fos.getChannel().force(true);
+				}
+			} finally {
+				fos.close();
+			}
+
+			try {
+				Files.move(tmp.toPath(), file.toPath(),
+						StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+			digest = messageDigest.digest(content);
+		} finally {
+			if (!moved) {
+				tmp.delete();
+			}
+		}
+		if (syncPolicy == SyncPolicy.FILE_AND_DIRECTORY) {
+			sync(dir);
+		}
+	}
+
+	/**
+	 * Forces the entries of directory to disk, on platforms which allow this.
+	 */
+	private static void sync(File dir) {
+		if (dir == null) {
+			return;
+		}
+		try {
+			FileChannel channel = FileChannel.open(dir.toPath(),
+					StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
 			}
+		} catch (IOException e) {
+			// directories cannot be opened on all platforms
 		}
 	}
 
@@ -353,8 +1313,11 @@ public class PersistentTypedProperties extends TypedProperties {
 			throw new UnsupportedOperationException();
 		}
 		listenForUpdates = false;
-		store(propertiesFile, "");
-		listenForUpdates = true;
+		try {
+			store(propertiesFile, "");
+		} finally {
+			listenForUpdates = true;
+		}
 	}
 
 }
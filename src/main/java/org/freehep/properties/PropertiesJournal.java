@@ -0,0 +1,390 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of changes to a properties file. Every record replaces one
+ * key: the key is removed, after which the entries stored for its new value
+ * (if any) are loaded. Records are single lines:
+ *
+ * <pre>
+ * crc key(TAB entrykey=entryvalue)*
+ * </pre>
+ *
+ * where crc is the CRC-32, in hex, of the rest of the line and backslash,
+ * tab, newline, carriage return and '=' are escaped with a backslash. A
+ * record is only valid if its line is complete and its crc matches, so a
+ * record torn by a crash is ignored on replay, and cut off by the next
+ * writer to replay the journal.
+ * <p>
+ * The journal may be shared by several instances, in this and other
+ * processes. The file lock taken by lock() excludes other processes; within
+ * this process the callers synchronize on an object shared per file.
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+class PropertiesJournal {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Receives the records of a journal on replay.
+	 */
+	interface Handler {
+		void remove(String key);
+
+		void load(String key, String value);
+	}
+
+	private File file;
+	private RandomAccessFile out;
+	private int records;
+	// bytes of the journal replayed or written by this instance
+	private long length;
+	// set if records of others were found behind this instance's records
+	private boolean stale;
+	private FileLock lock;
+	private int locks;
+
+	PropertiesJournal(File file) {
+		this.file = file;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return number of records in the journal
+	 */
+	synchronized int size() {
+		return records;
+	}
+
+	/**
+	 * @return number of bytes of the journal replayed, or written, by this
+	 *         instance
+	 */
+	synchronized long length() {
+		return length;
+	}
+
+	/**
+	 * @return true if the journal holds records which this instance has not
+	 *         replayed
+	 */
+	synchronized boolean isChanged() {
+		return stale || (file.length() != length);
+	}
+
+	/**
+	 * Locks the journal against other processes, until unlock() is called.
+	 * Locks nest.
+	 *
+	 * @throws IOException
+	 *             if the journal cannot be locked
+	 */
+	synchronized void lock() throws IOException {
+		if (locks == 0) {
+			lock = open().getChannel().lock();
+		}
+		locks++;
+	}
+
+	synchronized void unlock() throws IOException {
+		locks--;
+		if (locks == 0) {
+			lock.release();
+			lock = null;
+		}
+	}
+
+	/**
+	 * The journal is read and written through a single file, as closing any
+	 * file of this process may release the file lock.
+	 */
+	private RandomAccessFile open() throws IOException {
+		if (out == null) {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if (dir != null) {
+				dir.mkdirs();
+			}
+			out = new RandomAccessFile(file, "rw");
+		}
+		return out;
+	}
+
+	/**
+	 * Appends a record which replaces key by entries.
+	 *
+	 * @param key
+	 *            key which changed
+	 * @param entries
+	 *            entries to load for its new value, empty if it was removed
+	 * @param force
+	 *            force the record to disk
+	 * @throws IOException
+	 *             if the record cannot be written
+	 */
+	synchronized void append(String key, Map<String, String> entries,
+			boolean force) throws IOException {
+		StringBuilder s = new StringBuilder();
+		escape(s, key);
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			s.append('\t');
+			escape(s, entry.getKey());
+			s.append('=');
+			escape(s, entry.getValue());
+		}
+		byte[] payload = s.toString().getBytes(UTF8);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		String checksum = Long.toHexString(crc.getValue());
+
+		ByteBuffer buffer = ByteBuffer.allocate(9 + payload.length + 1);
+		for (int i = checksum.length(); i < 8; i++) {
+			buffer.put((byte) '0');
+		}
+		buffer.put(checksum.getBytes(UTF8));
+		buffer.put((byte) ' ');
+		buffer.put(payload);
+		buffer.put((byte) '\n');
+		buffer.flip();
+
+		FileChannel channel = open().getChannel();
+		if (channel.size() != length) {
+			stale = true;
+		}
+		channel.position(channel.size());
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		if (force) {
+			channel.force(false);
+		}
+		length = channel.position();
+		records++;
+	}
+
+	/**
+	 * Passes all valid records to handler, in order. A writer cuts a torn or
+	 * corrupt tail off the journal; a reader only reads the journal, under a
+	 * shared lock, and never creates it.
+	 *
+	 * @param handler
+	 *            handler to receive records
+	 * @param writer
+	 *            true if this instance writes the journal
+	 * @return number of records replayed
+	 * @throws IOException
+	 *             if the journal cannot be read
+	 */
+	synchronized int replay(Handler handler, boolean writer)
+			throws IOException {
+		records = 0;
+		length = 0;
+		stale = false;
+		if (!file.exists()) {
+			return 0;
+		}
+
+		if (writer) {
+			lock();
+			try {
+				RandomAccessFile in = open();
+				byte[] bytes = new byte[(int) in.length()];
+				in.seek(0);
+				in.readFully(bytes);
+				replay(bytes, handler);
+				if (length < bytes.length) {
+					in.setLength(length);
+				}
+			} finally {
+				unlock();
+			}
+		} else {
+			byte[] bytes;
+			FileChannel in;
+			try {
+				in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			} catch (NoSuchFileException e) {
+				return 0;
+			}
+			try {
+				in.lock(0, Long.MAX_VALUE, true);
+				ByteBuffer buffer = ByteBuffer.allocate((int) in.size());
+				while (buffer.hasRemaining() && (in.read(buffer) >= 0)) {
+					// read all
+				}
+				bytes = new byte[buffer.position()];
+				buffer.flip();
+				buffer.get(bytes);
+			} finally {
+				// releases the lock
+				in.close();
+			}
+			replay(bytes, handler);
+		}
+		return records;
+	}
+
+	/**
+	 * Replays the valid records of bytes, setting records and length.
+	 */
+	private void replay(byte[] bytes, Handler handler) {
+		int start = 0;
+		while (start < bytes.length) {
+			int end = start;
+			while ((end < bytes.length) && (bytes[end] != '\n')) {
+				end++;
+			}
+			if ((end == bytes.length) || !replay(bytes, start, end, handler)) {
+				System.err.println("PersistentTypedProperties: ignoring "
+						+ (bytes.length - start) + " bytes at the end of "
+						+ file);
+				break;
+			}
+			records++;
+			start = end + 1;
+		}
+		length = start;
+	}
+
+	private boolean replay(byte[] bytes, int start, int end, Handler handler) {
+		if ((end - start < 9) || (bytes[start + 8] != ' ')) {
+			return false;
+		}
+		long checksum = 0;
+		for (int i = start; i < start + 8; i++) {
+			int digit = Character.digit(bytes[i], 16);
+			if (digit < 0) {
+				return false;
+			}
+			checksum = (checksum << 4) | digit;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, start + 9, end - start - 9);
+		if (crc.getValue() != checksum) {
+			return false;
+		}
+
+		List<String> fields = unescape(new String(bytes, start + 9, end
+				- start - 9, UTF8));
+		handler.remove(fields.get(0));
+		for (int i = 1; i + 1 < fields.size(); i += 2) {
+			handler.load(fields.get(i), fields.get(i + 1));
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the first applied bytes of the journal, the records which were
+	 * compacted into the properties file. Records behind them are kept.
+	 *
+	 * @param applied
+	 *            number of bytes compacted
+	 * @throws IOException
+	 *             if the journal cannot be truncated
+	 */
+	synchronized void truncate(long applied) throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		RandomAccessFile raf = open();
+		byte[] rest = new byte[(int) Math.max(raf.length() - applied, 0)];
+		raf.seek(applied);
+		raf.readFully(rest);
+		raf.seek(0);
+		raf.write(rest);
+		raf.setLength(rest.length);
+
+		records = 0;
+		for (byte b : rest) {
+			if (b == '\n') {
+				records++;
+			}
+		}
+		length = Math.max(length - applied, 0);
+	}
+
+	synchronized void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	private static void escape(StringBuilder s, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+				s.append("\\\\");
+				break;
+			case '\t':
+				s.append("\\t");
+				break;
+			case '\n':
+				s.append("\\n");
+				break;
+			case '\r':
+				s.append("\\r");
+				break;
+			case '=':
+				s.append("\\=");
+				break;
+			default:
+				s.append(c);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Splits a record into key, entry key, entry value, ...
+	 */
+	private static List<String> unescape(String record) {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < record.length(); i++) {
+			char c = record.charAt(i);
+			if ((c == '\\') && (i + 1 < record.length())) {
+				c = record.charAt(++i);
+				switch (c) {
+				case 't':
+					s.append('\t');
+					break;
+				case 'n':
+					s.append('\n');
+					break;
+				case 'r':
+					s.append('\r');
+					break;
+				default:
+					s.append(c);
+					break;
+				}
+			} else if ((c == '\t') || (c == '=')) {
+				fields.add(s.toString());
+				s.setLength(0);
+			} else {
+				s.append(c);
+			}
+		}
+		fields.add(s.toString());
+		return fields;
+	}
+}
@@ -0,0 +1,257 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Single pass reader for properties files, as written by
+ * java.util.Properties.store. It accepts the same format as
+ * java.util.Properties.load(InputStream): ISO 8859-1 bytes, comment lines
+ * starting with '#' or '!', '=', ':' or white space separating key and value,
+ * backslash escapes including \\uxxxx and lines continued by a trailing
+ * backslash.
+ * <p>
+ * Instead of collecting the properties into a table, each one is passed to a
+ * handler as soon as it is read, with its value already split into type name
+ * and value and its key classified.
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+class PropertiesReader {
+
+	/**
+	 * Receives the properties read.
+	 */
+	interface Handler {
+		/**
+		 * @param key
+		 *            key of the property
+		 * @param kind
+		 *            kind of key, from its first '{' or '['
+		 * @param typeName
+		 *            part of the value before the first space, or null if
+		 *            there is no space
+		 * @param value
+		 *            part of the value after the first space, or the whole
+		 *            value if there is no space
+		 */
+		void entry(String key, KeyPath.Kind kind, String typeName, String value);
+	}
+
+	private static final int EOF = -1;
+	private static final int EOL = -2;
+
+	private final ByteBuffer in;
+	private final StringBuilder s = new StringBuilder();
+
+	private PropertiesReader(ByteBuffer in) {
+		this.in = in;
+	}
+
+	/**
+	 * Reads all properties from the remaining bytes of in.
+	 *
+	 * @param in
+	 *            bytes to read
+	 * @param handler
+	 *            handler to receive properties, in order of appearance
+	 * @throws IllegalArgumentException
+	 *             for a malformed \\uxxxx escape
+	 */
+	static void read(ByteBuffer in, Handler handler) {
+		new PropertiesReader(in).read(handler);
+	}
+
+	private void read(Handler handler) {
+		while (true) {
+			// skip white space, blank lines and continuations of lines which
+			// are still empty, after which a line may still be a comment
+			int c = EOF;
+			while (in.hasRemaining()) {
+				c = in.get() & 0xff;
+				if ((c == '\\') && in.hasRemaining()
+						&& isLineEnd(in.get(in.position()))) {
+					if ((in.get() == '\r') && in.hasRemaining()
+							&& (in.get(in.position()) == '\n')) {
+						in.get();
+					} else if (!in.hasRemaining()) {
+						// as Properties.load, for a single line end at the end
+						handler.entry("", KeyPath.Kind.PLAIN, null, "");
+						return;
+					}
+				} else if (!isWhiteSpace(c) && (c != '\n') && (c != '\r')) {
+					break;
+				}
+				c = EOF;
+			}
+			if (c == EOF) {
+				return;
+			}
+			if ((c == '#') || (c == '!')) {
+				skipLine();
+				continue;
+			}
+
+			// key
+			s.setLength(0);
+			KeyPath.Kind kind = KeyPath.Kind.PLAIN;
+			boolean separator = false;
+			while (true) {
+				if (c == '\\') {
+					c = escape();
+					if (c == EOL) {
+						c = next();
+						continue;
+					}
+					if (c == EOF) {
+						break;
+					}
+				} else if ((c == '=') || (c == ':')) {
+					separator = true;
+					c = next();
+					break;
+				} else if (isWhiteSpace(c) || (c == EOL) || (c == EOF)) {
+					break;
+				}
+				if (kind == KeyPath.Kind.PLAIN) {
+					if (c == '{') {
+						kind = KeyPath.Kind.TABLE;
+					} else if (c == '[') {
+						kind = KeyPath.Kind.LIST;
+					}
+				}
+				s.append((char) c);
+				c = next();
+			}
+			String key = s.toString();
+
+			// separator
+			c = skipWhiteSpace(c);
+			if (!separator && ((c == '=') || (c == ':'))) {
+				c = skipWhiteSpace(next());
+			}
+
+			// value
+			s.setLength(0);
+			int space = -1;
+			while ((c != EOL) && (c != EOF)) {
+				if (c == '\\') {
+					c = escape();
+					if (c == EOL) {
+						c = next();
+						continue;
+					}
+					if (c == EOF) {
+						break;
+					}
+				}
+				if ((c == ' ') && (space < 0)) {
+					space = s.length();
+				}
+				s.append((char) c);
+				c = next();
+			}
+
+			if (space < 0) {
+				handler.entry(key, kind, null, s.toString());
+			} else {
+				handler.entry(key, kind, s.substring(0, space), s
+						.substring(space + 1));
+			}
+		}
+	}
+
+	private static boolean isWhiteSpace(int c) {
+		return (c == ' ') || (c == '\t') || (c == '\f');
+	}
+
+	/**
+	 * @return next character, EOL at the end of a line (which is consumed,
+	 *         including the \n of \r\n) or EOF
+	 */
+	private int next() {
+		if (!in.hasRemaining()) {
+			return EOF;
+		}
+		int c = in.get() & 0xff;
+		if (c == '\r') {
+			if (in.hasRemaining() && (in.get(in.position()) == '\n')) {
+				in.get();
+			}
+			return EOL;
+		}
+		return c == '\n' ? EOL : c;
+	}
+
+	private void skipLine() {
+		int c;
+		do {
+			c = next();
+		} while ((c != EOL) && (c != EOF));
+	}
+
+	/**
+	 * @return first character after white space and line continuations
+	 *         starting at c
+	 */
+	private int skipWhiteSpace(int c) {
+		while (true) {
+			if (isWhiteSpace(c)) {
+				c = next();
+			} else if ((c == '\\') && in.hasRemaining()
+					&& isLineEnd(in.get(in.position()))) {
+				c = escape();
+				c = next();
+			} else {
+				return c;
+			}
+		}
+	}
+
+	private static boolean isLineEnd(int c) {
+		return (c == '\n') || (c == '\r');
+	}
+
+	/**
+	 * Handles the character(s) after a backslash.
+	 *
+	 * @return the escaped character, EOL for a line continuation, after which
+	 *         the leading white space of the next line has been skipped (so
+	 *         the caller should proceed with next()), or EOF for a backslash
+	 *         at the end of the input
+	 */
+	private int escape() {
+		int c = next();
+		switch (c) {
+		case EOF:
+			return EOF;
+		case EOL:
+			while (in.hasRemaining() && isWhiteSpace(in.get(in.position()))) {
+				in.get();
+			}
+			return EOL;
+		case 't':
+			return '\t';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = in.hasRemaining() ? Character.digit(
+						in.get() & 0xff, 16) : -1;
+				if (digit < 0) {
+					throw new IllegalArgumentException(
+							"Malformed \\uxxxx encoding.");
+				}
+				value = (value << 4) | digit;
+			}
+			return value;
+		default:
+			return c;
+		}
+	}
+}
@@ -0,0 +1,308 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary copy of the entries of a properties file, kept next to it
+ * (file.tpbin), from which the properties can be loaded without reading and
+ * parsing the file again. The snapshot holds the length and modification time
+ * of the file it was made of, and is only used as long as the file has the
+ * same length and modification time. It also holds the digest of the file, so
+ * that the file can be checked later. Its layout is:
+ *
+ * <pre>
+ * magic length modified digestlength digest
+ * count (length utf8bytes)*     string table
+ * count (key kind type value)*  entries, in order of the file
+ * </pre>
+ *
+ * where key, type and value index the string table, type being -1 if the
+ * entry has no type name, and kind is the ordinal of the KeyPath.Kind of the
+ * key. Type names and repeated values are stored only once.
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+class PropertiesSnapshot {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAGIC = 0x54504232; // TPB2
+	// key, kind, type and value of an entry
+	private static final int ENTRY_SIZE = 13;
+
+	private File file;
+
+	PropertiesSnapshot(File file) {
+		this.file = file;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Collects the entries of a snapshot, as they are read or written,
+	 * passing them on to another handler.
+	 */
+	static class Recorder implements PropertiesReader.Handler {
+		private final PropertiesReader.Handler next;
+		private final List<String> strings = new ArrayList<String>();
+		private final Map<String, Integer> index = new HashMap<String, Integer>();
+		private final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(
+				8192);
+		private final DataOutputStream entries = new DataOutputStream(
+				entryBytes);
+		private int count;
+
+		/**
+		 * @param next
+		 *            handler to pass the entries to, or null
+		 */
+		Recorder(PropertiesReader.Handler next) {
+			this.next = next;
+		}
+
+		public void entry(String key, KeyPath.Kind kind, String typeName,
+				String value) {
+			try {
+				entries.writeInt(indexOf(key));
+				entries.writeByte(kind.ordinal());
+				entries.writeInt(typeName != null ? indexOf(typeName) : -1);
+				entries.writeInt(indexOf(value));
+				count++;
+			} catch (IOException e) {
+				// cannot happen on a byte array
+				throw new RuntimeException(e);
+			}
+			if (next != null) {
+				next.entry(key, kind, typeName, value);
+			}
+		}
+
+		private int indexOf(String s) {
+			Integer i = index.get(s);
+			if (i == null) {
+				i = strings.size();
+				strings.add(s);
+				index.put(s, i);
+			}
+			return i;
+		}
+	}
+
+	/**
+	 * Entries of a snapshot, decoded only when they are loaded.
+	 */
+	static class Contents {
+		private final byte[] digest;
+		private final ByteBuffer in;
+		private final File file;
+
+		private Contents(byte[] digest, ByteBuffer in, File file) {
+			this.digest = digest;
+			this.in = in;
+			this.file = file;
+		}
+
+		/**
+		 * @return digest of the file the snapshot was made of
+		 */
+		byte[] getDigest() {
+			return digest;
+		}
+
+		/**
+		 * Passes the entries to handler, in order of the file. Nothing is
+		 * passed if the snapshot is damaged.
+		 *
+		 * @param handler
+		 *            handler to receive properties
+		 * @return true if the entries were passed
+		 */
+		boolean load(PropertiesReader.Handler handler) {
+			String[] keys;
+			KeyPath.Kind[] kinds;
+			String[] types;
+			String[] values;
+			try {
+				// counts and lengths are checked against what is left, so
+				// that a damaged snapshot cannot make us allocate too much
+				int size = in.getInt();
+				if ((size < 0) || (size > in.remaining() / 4)) {
+					return damaged();
+				}
+				String[] strings = new String[size];
+				for (int i = 0; i < strings.length; i++) {
+					int length = in.getInt();
+					if ((length < 0) || (length > in.remaining())) {
+						return damaged();
+					}
+					byte[] bytes = new byte[length];
+					in.get(bytes);
+					strings[i] = new String(bytes, UTF8);
+				}
+
+				// decode all entries before passing any
+				int count = in.getInt();
+				if ((count < 0) || (count > in.remaining() / ENTRY_SIZE)) {
+					return damaged();
+				}
+				keys = new String[count];
+				kinds = new KeyPath.Kind[count];
+				types = new String[count];
+				values = new String[count];
+				KeyPath.Kind[] allKinds = KeyPath.Kind.values();
+				for (int i = 0; i < count; i++) {
+					keys[i] = strings[in.getInt()];
+					kinds[i] = allKinds[in.get()];
+					int type = in.getInt();
+					types[i] = type >= 0 ? strings[type] : null;
+					values[i] = strings[in.getInt()];
+				}
+			} catch (BufferUnderflowException e) {
+				System.err.println("PropertiesSnapshot: ignoring truncated "
+						+ file);
+				return false;
+			} catch (RuntimeException e) {
+				// ArrayIndexOutOfBounds
+				return damaged();
+			}
+
+			for (int i = 0; i < keys.length; i++) {
+				handler.entry(keys[i], kinds[i], types[i], values[i]);
+			}
+			return true;
+		}
+
+		private boolean damaged() {
+			System.err.println("PropertiesSnapshot: ignoring damaged " + file);
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the snapshot, if it was made of a file with the given length and
+	 * modification time.
+	 *
+	 * @param length
+	 *            length of the properties file
+	 * @param modified
+	 *            modification time of the properties file
+	 * @return the contents, or null if the snapshot is missing, outdated or
+	 *         cannot be read
+	 */
+	Contents read(long length, long modified) {
+		if (!file.exists()) {
+			return null;
+		}
+		ByteBuffer in;
+		try {
+			in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		} catch (IOException e) {
+			System.err.println("PropertiesSnapshot: cannot read " + file);
+			System.err.println(e);
+			return null;
+		}
+
+		try {
+			if ((in.getInt() != MAGIC) || (in.getLong() != length)
+					|| (in.getLong() != modified)) {
+				return null;
+			}
+			byte[] digest = new byte[in.get()];
+			in.get(digest);
+			return new Contents(digest, in, file);
+		} catch (BufferUnderflowException e) {
+			System.err.println("PropertiesSnapshot: ignoring truncated "
+					+ file);
+			return null;
+		} catch (NegativeArraySizeException e) {
+			System.err.println("PropertiesSnapshot: ignoring damaged " + file);
+			return null;
+		}
+	}
+
+	/**
+	 * Replaces the snapshot by one of the entries collected by recorder.
+	 *
+	 * @param recorder
+	 *            entries of the properties file
+	 * @param digest
+	 *            digest of the properties file
+	 * @param length
+	 *            length of the properties file
+	 * @param modified
+	 *            modification time of the properties file
+	 */
+	void write(Recorder recorder, byte[] digest, long length, long modified)
+			throws IOException {
+		recorder.entries.flush();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				recorder.entryBytes.size() + 16 * recorder.strings.size() + 64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeLong(length);
+		out.writeLong(modified);
+		out.writeByte(digest.length);
+		out.write(digest);
+		out.writeInt(recorder.strings.size());
+		for (String s : recorder.strings) {
+			byte[] utf8 = s.getBytes(UTF8);
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+		out.writeInt(recorder.count);
+		recorder.entryBytes.writeTo(out);
+		out.flush();
+
+		// readers never see a half written snapshot
+		File dir = file.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile("." + file.getName() + ".", ".tmp",
+				dir);
+		boolean moved = false;
+		try {
+			FileOutputStream fos = new FileOutputStream(tmp);
+			try {
+				bytes.writeTo(fos);
+			} finally {
+				fos.close();
+			}
+
+			try {
+				Files.move(tmp.toPath(), file.toPath(),
+						StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+		} finally {
+			if (!moved) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Removes the snapshot.
+	 */
+	void delete() {
+		file.delete();
+	}
+}
@@ -0,0 +1,299 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Writes a tree of TypedProperties in the format of
+ * java.util.Properties.store(OutputStream, String), with the same escapes, so
+ * that the output can be read by java.util.Properties.load and
+ * PropertiesReader. Tables are written depth first, in the sorted order of
+ * each table, building the key{subkey} prefixes in a single StringBuilder.
+ * Values of simple types are written directly, other converters are passed a
+ * temporary java.util.Properties. A handler may be given to receive every
+ * property written, as PropertiesReader would read it back.
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+class PropertiesWriter {
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final BufferedWriter out;
+	private final PropertiesReader.Handler handler;
+	private final StringBuilder key = new StringBuilder();
+
+	PropertiesWriter(OutputStream out) {
+		this(out, null);
+	}
+
+	/**
+	 * @param handler
+	 *            handler to receive the properties written, or null
+	 */
+	PropertiesWriter(OutputStream out, PropertiesReader.Handler handler) {
+		this.out = new BufferedWriter(new OutputStreamWriter(out, ISO_8859_1));
+		this.handler = handler;
+	}
+
+	/**
+	 * Writes the comments, if not null, and the date, as headers.
+	 */
+	void writeHeader(String comments) throws IOException {
+		if (comments != null) {
+			writeComments(comments);
+		}
+		out.write('#');
+		out.write(new Date().toString());
+		out.newLine();
+	}
+
+	/**
+	 * Writes all properties of table and its sub tables.
+	 */
+	void write(TypedProperties table) throws IOException {
+		key.setLength(0);
+		table.write(this);
+	}
+
+	void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Called by TypedProperties.write for each of its properties.
+	 *
+	 * @param name
+	 *            name of the property in its table
+	 * @param value
+	 *            value of the property
+	 */
+	void writeProperty(String name, Object value) throws IOException {
+		int length = append(name);
+
+		if (value instanceof TypedProperties) {
+			((TypedProperties) value).write(this);
+		} else if (value instanceof List<?>) {
+			List<?> list = (List<?>) value;
+			int listLength = key.length();
+			for (int i = 0; i < list.size(); i++) {
+				key.append('[').append(i).append(']');
+				writeValue(list.get(i));
+				key.setLength(listLength);
+			}
+		} else {
+			writeValue(value);
+		}
+
+		key.setLength(length);
+	}
+
+	/**
+	 * Called by TypedProperties.write for a property of a simple type which
+	 * is still kept as the string it was read from.
+	 *
+	 * @param name
+	 *            name of the property in its table
+	 * @param type
+	 *            type of the property
+	 * @param raw
+	 *            value as read
+	 */
+	void writeProperty(String name, Class<?> type, String raw)
+			throws IOException {
+		int length = append(name);
+		writeLine(type, raw);
+		key.setLength(length);
+	}
+
+	/**
+	 * Appends name to the key of the current table.
+	 *
+	 * @return length of the key before
+	 */
+	private int append(String name) {
+		int length = key.length();
+		if (length == 0) {
+			key.append(name);
+		} else {
+			key.append('{').append(name).append('}');
+		}
+		return length;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> void writeValue(T value) throws IOException {
+		Class<?> type = value.getClass();
+		PropertyConverter<T> converter = (PropertyConverter<T>) TypedProperties
+				.getConverter(type);
+		if (converter == null) {
+			System.err
+					.println("Store: No Converter defined for '" + type + "'");
+		} else if (converter instanceof SimpleTypePropertyConverter<?>) {
+			writeLine(type, ((SimpleTypePropertyConverter<T>) converter)
+					.toString(value));
+		} else {
+			Properties p = new Properties();
+			converter.store(p, key.toString(), type, value);
+			for (String k : new TreeSet<String>(p.stringPropertyNames())) {
+				String v = p.getProperty(k);
+				escape(k, true);
+				out.write('=');
+				escape(v, false);
+				out.newLine();
+				if (handler != null) {
+					int space = v.indexOf(' ');
+					if (space < 0) {
+						handler.entry(k, kindOf(k), null, v);
+					} else {
+						handler.entry(k, kindOf(k), v.substring(0, space), v
+								.substring(space + 1));
+					}
+				}
+			}
+		}
+	}
+
+	private void writeLine(Class<?> type, String value) throws IOException {
+		escape(key, true);
+		out.write('=');
+		escape(type.getName(), false);
+		out.write(' ');
+		escape(value, true, false);
+		out.newLine();
+		if (handler != null) {
+			handler.entry(key.toString(), kindOf(key), type.getName(), value);
+		}
+	}
+
+	/**
+	 * @return kind of key, from its first '{' or '[', as PropertiesReader
+	 *         classifies it
+	 */
+	private static KeyPath.Kind kindOf(CharSequence key) {
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c == '{') {
+				return KeyPath.Kind.TABLE;
+			} else if (c == '[') {
+				return KeyPath.Kind.LIST;
+			}
+		}
+		return KeyPath.Kind.PLAIN;
+	}
+
+	private void escape(CharSequence s, boolean escapeSpace)
+			throws IOException {
+		escape(s, false, escapeSpace);
+	}
+
+	/**
+	 * Writes s escaped as by Properties.store. For a value which follows
+	 * other characters on the line, continued is true, so that a leading
+	 * space needs no escape.
+	 */
+	private void escape(CharSequence s, boolean continued, boolean escapeSpace)
+			throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c > 61) && (c < 127)) {
+				if (c == '\\') {
+					out.write('\\');
+				}
+				out.write(c);
+				continue;
+			}
+			switch (c) {
+			case ' ':
+				if (((i == 0) && !continued) || escapeSpace) {
+					out.write('\\');
+				}
+				out.write(' ');
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\f':
+				out.write("\\f");
+				break;
+			case '=':
+			case ':':
+			case '#':
+			case '!':
+				out.write('\\');
+				out.write(c);
+				break;
+			default:
+				if ((c < 0x0020) || (c > 0x007e)) {
+					writeUnicode(c);
+				} else {
+					out.write(c);
+				}
+				break;
+			}
+		}
+	}
+
+	private void writeUnicode(char c) throws IOException {
+		out.write('\\');
+		out.write('u');
+		out.write(HEX[(c >> 12) & 0xF]);
+		out.write(HEX[(c >> 8) & 0xF]);
+		out.write(HEX[(c >> 4) & 0xF]);
+		out.write(HEX[c & 0xF]);
+	}
+
+	/**
+	 * Writes comments as Properties.store does, prefixing each line with '#'
+	 * unless it starts with '#' or '!'.
+	 */
+	private void writeComments(String comments) throws IOException {
+		out.write('#');
+		int length = comments.length();
+		int current = 0;
+		int last = 0;
+		while (current < length) {
+			char c = comments.charAt(current);
+			if ((c > '\u00ff') || (c == '\n') || (c == '\r')) {
+				if (last != current) {
+					out.write(comments.substring(last, current));
+				}
+				if (c > '\u00ff') {
+					writeUnicode(c);
+				} else {
+					out.newLine();
+					if ((c == '\r') && (current != length - 1)
+							&& (comments.charAt(current + 1) == '\n')) {
+						current++;
+					}
+					if ((current == length - 1)
+							|| ((comments.charAt(current + 1) != '#') && (comments
+									.charAt(current + 1) != '!'))) {
+						out.write('#');
+					}
+				}
+				last = current + 1;
+			}
+			current++;
+		}
+		if (last != current) {
+			out.write(comments.substring(last, current));
+		}
+		out.newLine();
+	}
+}
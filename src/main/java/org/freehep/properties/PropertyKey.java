@@ -0,0 +1,109 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+/**
+ * Typed handle on a property, to be declared once and used for all lookups of
+ * that property:
+ * 
+ * <pre>
+ * static final PropertyKey&lt;Integer&gt; THREADS = PropertyKey.of(&quot;pool{threads}&quot;,
+ * 		Integer.class, 8);
+ * ...
+ * int threads = properties.get(THREADS);
+ * </pre>
+ * 
+ * The key is parsed, and the converter for non-typed values looked up, when
+ * the handle is created. The handle also remembers the outcome of its last
+ * lookup, which is reused as long as the table and its defaults did not
+ * change.
+ * 
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public final class PropertyKey<T> {
+
+	private final KeyPath path;
+	private final Class<T> type;
+	private final T defaultValue;
+	private final SimpleTypePropertyConverter<?> converter;
+
+	private volatile Slot slot;
+
+	private PropertyKey(String key, Class<T> type, T defaultValue) {
+		this.path = KeyPath.compile(key);
+		this.type = type;
+		this.defaultValue = defaultValue;
+		PropertyConverter<?> c = TypedProperties.getConverter(type);
+		this.converter = c instanceof SimpleTypePropertyConverter<?> ? (SimpleTypePropertyConverter<?>) c
+				: null;
+	}
+
+	/**
+	 * Creates a handle on a property.
+	 * 
+	 * @param key
+	 *            property name, may be of the form key{subkey}...
+	 * @param type
+	 *            type of the property
+	 * @param defaultValue
+	 *            value returned if the property is not set, may be null
+	 * @return handle
+	 */
+	public static <T> PropertyKey<T> of(String key, Class<T> type,
+			T defaultValue) {
+		if (type == null) {
+			throw new NullPointerException("type");
+		}
+		return new PropertyKey<T>(key, type, defaultValue);
+	}
+
+	public String getKey() {
+		return path.getKey();
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	public T getDefault() {
+		return defaultValue;
+	}
+
+	KeyPath getPath() {
+		return path;
+	}
+
+	/**
+	 * @return converter for non-typed (String) values, or null
+	 */
+	SimpleTypePropertyConverter<?> getConverter() {
+		return converter;
+	}
+
+	Slot getSlot() {
+		return slot;
+	}
+
+	void setSlot(Slot slot) {
+		this.slot = slot;
+	}
+
+	@Override
+	public String toString() {
+		return path.getKey() + " (" + type.getName() + ")";
+	}
+
+	/**
+	 * Value found in table, valid while the stamp of table is unchanged.
+	 */
+	static final class Slot {
+		final TypedProperties table;
+		final long stamp;
+		final Object value;
+
+		Slot(TypedProperties table, long stamp, Object value) {
+			this.table = table;
+			this.stamp = stamp;
+			this.value = value;
+		}
+	}
+}
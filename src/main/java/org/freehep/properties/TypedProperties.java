@@ -1,19 +1,29 @@
 // Copyright FreeHEP, 2007-2009
 package org.freehep.properties;
 
-import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.SortedMap;
-import java.util.Stack;
-import java.util.TreeMap;
-import java.util.regex.Matcher;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * TypedProperties is similar to java.util.Properties but allows for storage of
@@ -55,19 +65,33 @@ import java.util.regex.Matcher;
  * <p>
  * TypedProperties is persistent by means of a standard properties file.
  * <p>
+ * TypedProperties is thread-safe. Lookups take no locks, changes are
+ * serialized per table. Every property is kept as a single entry of type and
+ * value, so a lookup never sees the value of one change with the type of
+ * another.
+ * <p>
  * 
  * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
  */
 public class TypedProperties {
 
-	private boolean readOnly;
+	private volatile boolean readOnly;
 	private String name;
 	private TypedProperties defaults = null;
 	private TypedProperties parent = null;
-	private SortedMap<String, Object> properties = new TreeMap<String, Object>();
-	private Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+	private volatile ConcurrentNavigableMap<String, Entry> properties = new ConcurrentSkipListMap<String, Entry>();
+
+	private final AtomicLong version = new AtomicLong();
+	private final Map<KeyPath, Resolution> resolutions = new ConcurrentHashMap<KeyPath, Resolution>();
+	private static final int MAX_RESOLUTIONS = 1024;
 
-	private List<PropertyChangeListener> listeners = new ArrayList<PropertyChangeListener>();
+	private List<PropertyChangeListener> listeners = new CopyOnWriteArrayList<PropertyChangeListener>();
+	private final ConcurrentNavigableMap<String, List<PropertyChangeListener>> keyListeners = new ConcurrentSkipListMap<String, List<PropertyChangeListener>>();
+	private volatile EventDispatcher dispatcher;
+	private final ConcurrentMap<PropertyChangeListener, EventDispatcher.Delivery> deliveries = new ConcurrentHashMap<PropertyChangeListener, EventDispatcher.Delivery>();
+	private final ConcurrentMap<PropertyChangeListener, EventDispatcher.Delivery> keyDeliveries = new ConcurrentHashMap<PropertyChangeListener, EventDispatcher.Delivery>();
+	private int batchDepth;
+	private List<Change> batchChanges;
 
 	public static final TypedProperties EMPTY_PROPERTIES = new Empty();
 
@@ -100,22 +124,340 @@ public class TypedProperties {
 		name = null;
 	}
 
+	/**
+	 * Adds a listener for changes of all properties of this table and of its
+	 * sub tables. The listener receives a TypedPropertyChangeEvent for every
+	 * change, see also beginBatch().
+	 * 
+	 * @param l
+	 *            listener to add
+	 */
 	public void addPropertyChangeListener(PropertyChangeListener l) {
 		listeners.add(l);
 	}
 
 	public void removePropertyChangeListener(PropertyChangeListener l) {
 		listeners.remove(l);
+		deliveries.remove(l);
+	}
+
+	/**
+	 * Adds a listener for changes of a single property. If key is a (sub)
+	 * table, such as table{1}, changes of all properties inside it are
+	 * included. The listener only receives the TypedPropertyChangeEvents for
+	 * these properties, also inside a batch, and events without key.
+	 * 
+	 * @param key
+	 *            key of the property or table
+	 * @param l
+	 *            listener to add
+	 */
+	public void addPropertyChangeListener(String key, PropertyChangeListener l) {
+		String scope = KeyPath.compile(key).getCanonicalKey();
+		synchronized (keyListeners) {
+			List<PropertyChangeListener> list = keyListeners.get(scope);
+			if (list == null) {
+				list = new CopyOnWriteArrayList<PropertyChangeListener>();
+				keyListeners.put(scope, list);
+			}
+			list.add(l);
+		}
+	}
+
+	public void removePropertyChangeListener(String key,
+			PropertyChangeListener l) {
+		String scope = KeyPath.compile(key).getCanonicalKey();
+		synchronized (keyListeners) {
+			List<PropertyChangeListener> list = keyListeners.get(scope);
+			if ((list != null) && list.remove(l) && list.isEmpty()) {
+				keyListeners.remove(scope);
+			}
+		}
+		keyDeliveries.remove(l);
+	}
+
+	/**
+	 * Sets the executor on which change events of this table and its sub
+	 * tables are delivered. By default, or if executor is null, events are
+	 * delivered on the thread which made the change, which for a reload is
+	 * the thread of the FileMonitor. On an executor, a slow listener delays
+	 * neither the change nor other listeners. Each listener receives its
+	 * events in order, one at a time; events which arrive while it is busy
+	 * are merged, as in a batch.
+	 * 
+	 * @param executor
+	 *            executor to deliver events on, or null
+	 */
+	public void setExecutor(Executor executor) {
+		dispatcher = executor != null ? new EventDispatcher(executor) : null;
+	}
+
+	/**
+	 * @return executor set for this table or the nearest of its parents, or
+	 *         null if events are delivered on the calling thread
+	 */
+	public Executor getExecutor() {
+		EventDispatcher d = getDispatcher();
+		return d != null ? d.getExecutor() : null;
+	}
+
+	private EventDispatcher getDispatcher() {
+		for (TypedProperties p = this; p != null; p = p.parent) {
+			EventDispatcher d = p.dispatcher;
+			if (d != null) {
+				return d;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Waits until all change events which are delivered on the executor of
+	 * this table have been delivered, including the events of changes made
+	 * by the listeners themselves. Returns immediately if there is no
+	 * executor.
+	 * 
+	 * @param timeout
+	 *            maximum time to wait
+	 * @param unit
+	 *            unit of timeout
+	 * @return false if the timeout elapsed first
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public boolean awaitQuiescence(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		EventDispatcher d = getDispatcher();
+		return d != null ? d.awaitQuiescence(unit.toMillis(timeout)) : true;
+	}
+
+	/**
+	 * @return true if a listener of this table or of one of its parents
+	 *         would receive a change of this table
+	 */
+	private boolean isObserved() {
+		for (TypedProperties p = this; p != null; p = p.parent) {
+			if (!p.listeners.isEmpty() || !p.keyListeners.isEmpty()) {
+				return true;
+			}
+		}
+		return false;
 	}
 
-	private void firePropertyChangeEvent() {
-		PropertyChangeEvent event = new PropertyChangeEvent(this, null, null,
-				null);
-		for (PropertyChangeListener listener : listeners) {
-			listener.propertyChange(event);
+	/**
+	 * Fires event, a change of this table, to the listeners of this table
+	 * and, as seen from there, of its parents. If this table or one of its
+	 * parents is in a batch, the event is kept until the end of the batch.
+	 */
+	private void firePropertyChangeEvent(TypedPropertyChangeEvent event) {
+		firePropertyChangeEvents(Collections.singletonList(event));
+	}
+
+	private void firePropertyChangeEvents(List<TypedPropertyChangeEvent> events) {
+		// defer to the end of the enclosing batch, if any
+		for (TypedProperties p = this; p != null; p = p.parent) {
+			synchronized (p) {
+				if (p.batchDepth > 0) {
+					if (p.batchChanges == null) {
+						p.batchChanges = new ArrayList<Change>();
+					}
+					for (TypedPropertyChangeEvent event : events) {
+						p.batchChanges.add(new Change(this, event));
+					}
+					return;
+				}
+			}
+		}
+
+		TypedProperties p = this;
+		while (true) {
+			p.dispatch(events);
+			if (!p.isAttached()) {
+				return;
+			}
+			List<TypedPropertyChangeEvent> parentEvents = new ArrayList<TypedPropertyChangeEvent>(
+					events.size());
+			for (TypedPropertyChangeEvent event : events) {
+				parentEvents.add(event.forParent(p.parent, p.name));
+			}
+			events = parentEvents;
+			p = p.parent;
 		}
 	}
 
+	/**
+	 * @return true if this table is a sub table which is still stored in its
+	 *         parent
+	 */
+	private boolean isAttached() {
+		return (parent != null) && (parent.getTable(name) == this);
+	}
+
+	/**
+	 * Delivers events, changes of this table or its sub tables, to the
+	 * listeners of this table. Listeners for all properties receive a single
+	 * event, which has no key if there is more than one change. Listeners for
+	 * a key receive every change of that key.
+	 */
+	private void dispatch(List<TypedPropertyChangeEvent> events) {
+		if (events.isEmpty()) {
+			return;
+		}
+
+		EventDispatcher async = getDispatcher();
+		if (!listeners.isEmpty()) {
+			if (async != null) {
+				for (PropertyChangeListener listener : listeners) {
+					async.post(getDelivery(deliveries, listener, true), events);
+				}
+			} else {
+				TypedPropertyChangeEvent event = EventDispatcher.summarize(
+						this, events);
+				for (PropertyChangeListener listener : listeners) {
+					listener.propertyChange(event);
+				}
+			}
+		}
+
+		if (!keyListeners.isEmpty()) {
+			for (TypedPropertyChangeEvent event : events) {
+				for (PropertyChangeListener listener : getKeyListeners(event
+						.getKey())) {
+					if (async != null) {
+						async.post(getDelivery(keyDeliveries, listener, false),
+								Collections.singletonList(event));
+					} else {
+						listener.propertyChange(event);
+					}
+				}
+			}
+		}
+	}
+
+	private EventDispatcher.Delivery getDelivery(
+			ConcurrentMap<PropertyChangeListener, EventDispatcher.Delivery> map,
+			PropertyChangeListener listener, boolean all) {
+		EventDispatcher.Delivery delivery = map.get(listener);
+		if (delivery == null) {
+			delivery = new EventDispatcher.Delivery(this, listener, all);
+			EventDispatcher.Delivery previous = map.putIfAbsent(listener,
+					delivery);
+			if (previous != null) {
+				delivery = previous;
+			}
+		}
+		return delivery;
+	}
+
+	/**
+	 * @return listeners for key, for the tables which contain key and for the
+	 *         properties inside key, or all listeners for a null key
+	 */
+	private Set<PropertyChangeListener> getKeyListeners(String key) {
+		Set<PropertyChangeListener> result = new LinkedHashSet<PropertyChangeListener>();
+		if (key == null) {
+			for (List<PropertyChangeListener> list : keyListeners.values()) {
+				result.addAll(list);
+			}
+			return result;
+		}
+
+		KeyPath path = KeyPath.compile(key);
+		for (int i = 1; i <= path.size(); i++) {
+			List<PropertyChangeListener> list = keyListeners.get(path
+					.getCanonicalKey(i));
+			if (list != null) {
+				result.addAll(list);
+			}
+		}
+		// key{...} sorts between key{ and key| as '|' follows '{'
+		String table = path.getCanonicalKey();
+		for (List<PropertyChangeListener> list : keyListeners.subMap(
+				table + "{", table + "|").values()) {
+			result.addAll(list);
+		}
+		return result;
+	}
+
+	/**
+	 * Starts a batch of changes. Until the matching commit() no change events
+	 * are fired for this table and its sub tables; commit() then delivers the
+	 * changes. Listeners for all properties of a table receive a single
+	 * event, which has no key if more than one property changed. For a
+	 * PersistentTypedProperties this means the batch is stored once.
+	 * Listeners for a key receive each change of that key. Batches may be
+	 * nested, only the outermost commit() fires.
+	 */
+	public synchronized void beginBatch() {
+		batchDepth++;
+	}
+
+	/**
+	 * Ends the batch started by the last beginBatch().
+	 * 
+	 * @throws IllegalStateException
+	 *             if no batch was started
+	 */
+	public void commit() {
+		List<Change> changes;
+		synchronized (this) {
+			if (batchDepth == 0) {
+				throw new IllegalStateException("No batch to commit");
+			}
+			batchDepth--;
+			if ((batchDepth > 0) || (batchChanges == null)) {
+				return;
+			}
+			changes = batchChanges;
+			batchChanges = null;
+		}
+
+		// collect the changes per sub table, and as seen from this table
+		Map<TypedProperties, List<TypedPropertyChangeEvent>> tables = new LinkedHashMap<TypedProperties, List<TypedPropertyChangeEvent>>();
+		List<TypedPropertyChangeEvent> events = new ArrayList<TypedPropertyChangeEvent>();
+		for (Change change : changes) {
+			TypedProperties p = change.table;
+			TypedPropertyChangeEvent event = change.event;
+			while ((p != this) && (event != null)) {
+				List<TypedPropertyChangeEvent> list = tables.get(p);
+				if (list == null) {
+					list = new ArrayList<TypedPropertyChangeEvent>();
+					tables.put(p, list);
+				}
+				list.add(event);
+				// no longer part of this table
+				event = p.isAttached() ? event.forParent(p.parent, p.name)
+						: null;
+				p = p.parent;
+			}
+			if (event != null) {
+				events.add(event);
+			}
+		}
+		for (Map.Entry<TypedProperties, List<TypedPropertyChangeEvent>> entry : tables
+				.entrySet()) {
+			entry.getKey().dispatch(entry.getValue());
+		}
+		firePropertyChangeEvents(events);
+	}
+
+	/**
+	 * Starts a batch of changes, to be used as:
+	 * 
+	 * <pre>
+	 * try (TypedProperties.Batch batch = properties.batch()) {
+	 *     properties.set(...);
+	 *     ...
+	 * }
+	 * </pre>
+	 * 
+	 * @return batch, which commits when closed
+	 */
+	public Batch batch() {
+		beginBatch();
+		return new Batch(this);
+	}
+
 	public void setReadOnly() {
 		readOnly = true;
 	}
@@ -141,21 +483,87 @@ public class TypedProperties {
 	}
 
 	protected <T> void setProperty(String key, Class<?> type, T value) {
+		setProperty(KeyPath.compile(key), 0, type, value, null);
+	}
+
+	/**
+	 * Sets a property from its string form, which is converted by converter
+	 * only when the property is first read. The property is not compared to
+	 * its default, as that would need the converted value.
+	 * 
+	 * @param path
+	 *            compiled key
+	 * @param type
+	 *            type of the property
+	 * @param converter
+	 *            converter for type
+	 * @param raw
+	 *            value as written in a properties file
+	 */
+	void setRawProperty(KeyPath path, Class<?> type,
+			SimpleTypePropertyConverter<?> converter, String raw) {
+		setProperty(path, 0, type, null, new Entry(type, converter, raw));
+	}
+
+	private <T> void set(KeyPath path, int index, Class<?> type, T value,
+			Entry raw) {
+		if (readOnly) {
+			throw new UnsupportedOperationException();
+		}
+
+		setProperty(path, index, type, value, raw);
+	}
+
+	/**
+	 * Sets value, or raw if not null, under path.
+	 */
+	private <T> void setProperty(KeyPath path, int index, Class<?> type,
+			T value, Entry raw) {
 		// handle key patters as key{subkey}...
-		Matcher m = TypedPropertiesConverter.MAP_PATTERN.matcher(key);
-		if (m.matches()) {
-			String mainKey = m.group(1);
-			TypedProperties subProperties = (TypedProperties) properties
-					.get(mainKey);
-			if (subProperties == null) {
-				subProperties = new TypedProperties(this, mainKey);
+		if (index < path.size() - 1) {
+			String mainKey = path.get(index);
+			TypedProperties subProperties;
+			TypedPropertyChangeEvent event = null;
+			synchronized (this) {
+				subProperties = getTable(mainKey);
+				if (subProperties == null) {
+					// store the new table, but fire its creation only once
+					// the lock is released
+					subProperties = new TypedProperties();
+					subProperties.parent = this;
+					subProperties.name = mainKey;
+					subProperties.readOnly = readOnly;
+					event = put(KeyPath.compile(mainKey), 0,
+							TypedProperties.class, subProperties, null);
+				}
+			}
+			if (event != null) {
+				firePropertyChangeEvent(event);
 			}
 
-			subProperties.set(m.group(2) + m.group(3), type, value);
+			subProperties.set(path, index + 1, type, value, raw);
 			return;
 		}
 
-		Class<?> expectedType = getType(key);
+		TypedPropertyChangeEvent event;
+		synchronized (this) {
+			event = put(path, index, type, value, raw);
+		}
+		if (event != null) {
+			firePropertyChangeEvent(event);
+		}
+	}
+
+	/**
+	 * Sets value, or raw if not null, under the last segment of path. The
+	 * caller holds the lock of this table.
+	 * 
+	 * @return the event to fire once the lock is released, or null
+	 */
+	private <T> TypedPropertyChangeEvent put(KeyPath path, int index,
+			Class<?> type, T value, Entry raw) {
+		String key = path.getName();
+		Class<?> expectedType = getType(path, index);
 		// special case for Lists
 		if ((expectedType != null) && List.class.isAssignableFrom(expectedType)) {
 			expectedType = List.class;
@@ -168,20 +576,35 @@ public class TypedProperties {
 					+ expectedType);
 		}
 
-		T defaultValue = defaults != null ? defaults.get(key, (T) null) : null;
-		boolean changed = false;
-		if ((value == null) || (value.equals(defaultValue))) {
-			changed = properties.containsKey(key);
-			properties.remove(key);
-			types.remove(key);
+		boolean changed;
+		Entry previous;
+		if (raw != null) {
+			changed = true;
+			previous = properties.put(key, raw);
+		} else if ((value == null)
+				|| (value.equals(defaults != null ? defaults.get(path, index,
+						(T) null) : null))) {
+			previous = properties.remove(key);
+			changed = previous != null;
 		} else {
 			changed = true;
-			properties.put(key, value);
-			types.put(key, type);
+			previous = properties.put(key, new Entry(type, value));
 		}
-		if (changed) {
-			firePropertyChangeEvent();
+		if (!changed) {
+			return null;
 		}
+		modified();
+		return isObserved() ? new TypedPropertyChangeEvent(this, key, type,
+				previous, raw != null ? raw : value, false) : null;
+	}
+
+	/**
+	 * @return sub table stored in this table under key, or null
+	 */
+	private TypedProperties getTable(String key) {
+		Entry entry = properties.get(key);
+		return (entry != null) && (entry.value instanceof TypedProperties) ? (TypedProperties) entry.value
+				: null;
 	}
 
 	/**
@@ -209,55 +632,80 @@ public class TypedProperties {
 	 * @param defaultValue
 	 * @return property for given key
 	 */
-	@SuppressWarnings("unchecked")
 	public <T> T get(String key, T defaultValue) {
-		// handle key pattern such as key{subkey}...
-		Matcher m = TypedPropertiesConverter.MAP_PATTERN.matcher(key);
-		if (m.matches()) {
-			String mainKey = m.group(1);
-			TypedProperties subProperties = (TypedProperties) properties
-					.get(mainKey);
-			if (subProperties != null) {
-				return subProperties.get(m.group(2) + m.group(3), defaultValue);
-			}
-		} else {
-			Object o = properties.get(key);
-			if (o != null) {
-				// special case, for non-typed files if a default value (type) is given
-				if (getType(key).equals(String.class) && defaultValue != null) {
-					PropertyConverter<?> converter = converters.get(defaultValue.getClass());
-					if ((converter != null) && (converter instanceof SimpleTypePropertyConverter<?>)) {
-						return ((SimpleTypePropertyConverter<T>)converter).toObject((String)o);
-					}
+		return get(KeyPath.compile(key), 0, defaultValue);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(KeyPath path, int index, T defaultValue) {
+		Object o = getValue(path, index,
+				defaultValue != null ? defaultValue.getClass() : null);
+		return o != null ? (T) o : defaultValue;
+	}
+
+	/**
+	 * Looks up a property through its handle.
+	 * 
+	 * @param key
+	 *            handle of the property
+	 * @return property, or the default of key if not found
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(PropertyKey<T> key) {
+		long stamp = stamp();
+		PropertyKey.Slot slot = key.getSlot();
+		if ((slot == null) || (slot.table != this) || (slot.stamp != stamp)) {
+			Entry entry = getConvertedEntry(key.getPath(), 0);
+			Object o = null;
+			if (entry != null) {
+				o = entry.get();
+				// special case, for non-typed files
+				if (entry.type.equals(String.class)
+						&& (key.getConverter() != null)) {
+					o = key.getConverter().toObject((String) o);
 				}
-				return (T)o;
 			}
+			slot = new PropertyKey.Slot(this, stamp, o);
+			key.setSlot(slot);
 		}
+		return slot.value != null ? (T) slot.value : key.getDefault();
+	}
 
-		// Find root, keep track of keys
-		Stack<String> keys = new Stack<String>();
-		TypedProperties p = this;
-		while (p.parent != null) {
-			keys.push(p.name);
-			p = p.parent;
+	/**
+	 * Sets a property through its handle.
+	 * 
+	 * @param key
+	 *            handle of the property
+	 * @param value
+	 *            value, or null to remove the property
+	 */
+	public <T> void set(PropertyKey<T> key, T value) {
+		if (readOnly) {
+			throw new UnsupportedOperationException();
 		}
-		TypedProperties root = p;
-		// Find parallel(s)
-		while (root.defaults != null) {
-			p = root.defaults;
-			for (int i = keys.size() - 1; i >= 0; i--) {
-				String subKey = keys.get(i);
-				p = p.get(subKey, (TypedProperties) null);
-				if (p == null) {
-					break;
-				}
-			}
-			if (p != null) {
-				return p.get(key, defaultValue);
-			}
-			root = root.defaults;
+
+		setProperty(key.getKey(), key.getType(), value);
+	}
+
+	/**
+	 * Looks up the value for path, without boxing a default.
+	 * 
+	 * @param path
+	 *            compiled key
+	 * @param index
+	 *            first segment to look up in this table
+	 * @param type
+	 *            requested type, used to convert non-typed (String) values,
+	 *            may be null
+	 * @return value or null if not found
+	 */
+	private Object getValue(KeyPath path, int index, Class<?> type) {
+		Entry entry = getConvertedEntry(path, index);
+		if (entry == null) {
+			return null;
 		}
-		return defaultValue;
+
+		return entry.get(type);
 	}
 
 	/**
@@ -269,50 +717,331 @@ public class TypedProperties {
 	 * @return type of property
 	 */
 	public Class<?> getType(String key) {
-		// handle key pattern such as key{subkey}...
-		Matcher m = TypedPropertiesConverter.MAP_PATTERN.matcher(key);
-		if (m.matches()) {
-			String mainKey = m.group(1);
-			TypedProperties subProperties = (TypedProperties) properties
-					.get(mainKey);
-			if (subProperties != null) {
-				return subProperties.getType(m.group(2) + m.group(3));
+		return getType(KeyPath.compile(key), 0);
+	}
+
+	private Class<?> getType(KeyPath path, int index) {
+		Entry entry = getEntry(path, index);
+		return entry != null ? entry.type : null;
+	}
+
+	/**
+	 * @return entry for path, or null if not found
+	 */
+	private Entry getEntry(KeyPath path, int index) {
+		while (true) {
+			TypedProperties table = resolve(path, index);
+			if (table == null) {
+				return null;
 			}
-		} else {
-			Class<?> type = types.get(key);
-			if (type != null) {
-				return type;
+			Entry entry = table.properties.get(path.getName());
+			if (entry == null) {
+				// removed since it was resolved, look again without the cache
+				table = find(path, index);
+				entry = table != null ? table.properties.get(path.getName())
+						: null;
+			}
+			if ((entry == null) || !entry.isFailed()) {
+				return entry;
+			}
+			// a value which could not be converted is dropped, as it would
+			// not have been loaded if converted right away, so that its
+			// default shows
+			table.drop(path.getName(), entry);
+		}
+	}
+
+	/**
+	 * @return entry for path with its value converted, or null if not found
+	 */
+	private Entry getConvertedEntry(KeyPath path, int index) {
+		while (true) {
+			Entry entry = getEntry(path, index);
+			if ((entry == null) || (entry.get() != null)) {
+				return entry;
+			}
+		}
+	}
+
+	private void drop(String key, Entry entry) {
+		synchronized (this) {
+			if (properties.remove(key, entry)) {
+				modified();
+			}
+		}
+	}
+
+	/**
+	 * Finds the table which holds the property for the segments of path,
+	 * starting at index. Sub tables are followed as far as they exist, after
+	 * which the defaults of the root are searched for the remaining segments,
+	 * as described in get(String, T).
+	 * <p>
+	 * Lookups of full keys are remembered per table, together with the stamp()
+	 * of the tables involved, and reused until any of these tables changes.
+	 * 
+	 * @param path
+	 *            compiled key
+	 * @param index
+	 *            first segment to look up in this table
+	 * @return table holding the property, or null if not found
+	 */
+	private TypedProperties resolve(KeyPath path, int index) {
+		if (index > 0) {
+			return find(path, index);
+		}
+
+		if ((path.size() == 1) && properties.containsKey(path.getName())) {
+			return this;
+		}
+
+		long stamp = stamp();
+		Resolution resolution = resolutions.get(path);
+		if ((resolution != null) && (resolution.stamp == stamp)) {
+			return resolution.table;
+		}
+
+		TypedProperties table = find(path, 0);
+		if (resolutions.size() >= MAX_RESOLUTIONS) {
+			resolutions.clear();
+		}
+		resolutions.put(path, new Resolution(stamp, table));
+		return table;
+	}
+
+	private TypedProperties find(KeyPath path, int index) {
+		TypedProperties table = this;
+		int last = path.size() - 1;
+		while (index < last) {
+			TypedProperties subProperties = table.getTable(path.get(index));
+			if (subProperties == null) {
+				break;
+			}
+			table = subProperties;
+			index++;
+		}
+
+		if ((index == last) && table.properties.containsKey(path.get(last))) {
+			return table;
+		}
+
+		// Find parallel(s) in the defaults of the root
+		TypedProperties root = table.getRoot();
+		while (root.defaults != null) {
+			TypedProperties p = table.parallel(root.defaults);
+			if (p != null) {
+				return p.resolve(path, index);
 			}
+			root = root.defaults;
 		}
+		return null;
+	}
+
+	/**
+	 * @return the table at the same place as this table in the tree of root,
+	 *         or null if that tree does not have it
+	 */
+	private TypedProperties parallel(TypedProperties root) {
+		if (parent == null) {
+			return root;
+		}
+		TypedProperties p = parent.parallel(root);
+		return p != null ? p.get(name, (TypedProperties) null) : null;
+	}
 
-		// Find root, keep track of keys
-		Stack<String> keys = new Stack<String>();
+	private TypedProperties getRoot() {
 		TypedProperties p = this;
 		while (p.parent != null) {
-			keys.push(p.name);
 			p = p.parent;
 		}
-		TypedProperties root = p;
-		// Find parallel(s)
+		return p;
+	}
+
+	/**
+	 * Adds the keys of all properties which can be found directly in this table,
+	 * either in the table itself or in its parallels in the defaults, following
+	 * the same route as find.
+	 */
+	private void collectKeys(Set<String> keys) {
+		keys.addAll(properties.keySet());
+		TypedProperties root = getRoot();
 		while (root.defaults != null) {
-			p = root.defaults;
-			for (int i = keys.size() - 1; i >= 0; i--) {
-				String subKey = keys.get(i);
-				p = p.get(subKey, (TypedProperties) null);
-				if (p == null) {
-					break;
-				}
-			}
+			TypedProperties p = parallel(root.defaults);
 			if (p != null) {
-				return p.getType(key);
+				p.collectKeys(keys);
+				return;
 			}
 			root = root.defaults;
 		}
-		return null;
 	}
 
-	private TypedProperties getRoot(TypedProperties o, Stack<String> keys) {
-		return o;
+	/**
+	 * Marks this table, and therefore the tree it is part of, as modified.
+	 * This must follow the change itself, so that a lookup which started
+	 * before the change is never remembered under the new stamp.
+	 */
+	private void modified() {
+		for (TypedProperties p = this; p != null; p = p.parent) {
+			p.version.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns a number which changes whenever any table which can take part in
+	 * a lookup from this table changes: the tree of this table and the trees
+	 * of its defaults. Versions only increase, so the sum of the root
+	 * versions does as well.
+	 */
+	private long stamp() {
+		long stamp = 0;
+		TypedProperties root = getRoot();
+		while (root != null) {
+			stamp += root.version.get();
+			root = root.defaults != null ? root.defaults.getRoot() : null;
+		}
+		return stamp;
+	}
+
+	/**
+	 * Type and value of a property. A property set by setRawProperty keeps
+	 * its string until the value is first asked for, when it is converted
+	 * once, under the lock of the entry, and remembered.
+	 */
+	private static final class Entry implements
+			TypedPropertyChangeEvent.Value {
+		private final Class<?> type;
+		private volatile Object value;
+		private volatile String raw;
+		private final SimpleTypePropertyConverter<?> converter;
+		private volatile Conversion conversions;
+
+		private Entry(Class<?> type, Object value) {
+			this.type = type;
+			this.value = value;
+			this.raw = null;
+			this.converter = null;
+		}
+
+		private Entry(Class<?> type, SimpleTypePropertyConverter<?> converter,
+				String raw) {
+			this.type = type;
+			this.value = null;
+			this.raw = raw;
+			this.converter = converter;
+		}
+
+		/**
+		 * @return value, or null if the string could not be converted
+		 */
+		public Object get() {
+			if (raw == null) {
+				return value;
+			}
+			synchronized (this) {
+				String s = raw;
+				if (s != null) {
+					try {
+						value = converter.toObject(s);
+					} catch (RuntimeException e) {
+						System.err
+								.println("TypedProperties: Could not convert '"
+										+ s + "' to type '" + type.getName()
+										+ "'");
+						System.err.println(e);
+					}
+					// value is published by this volatile write
+					raw = null;
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * @return true if the value was read, but could not be converted
+		 */
+		private boolean isFailed() {
+			return (raw == null) && (value == null);
+		}
+
+		/**
+		 * @return true if other holds the same value, compared as read if
+		 *         neither was converted yet
+		 */
+		private boolean isSame(Entry other) {
+			String s = raw;
+			String t = other.raw;
+			if ((s != null) && (t != null)) {
+				return s.equals(t);
+			}
+			Object o = get();
+			return o != null ? o.equals(other.get()) : other.get() == null;
+		}
+
+		/**
+		 * @return value, converted to type if it was not typed. Conversions
+		 *         are remembered, a new value gives a new Entry.
+		 */
+		private Object get(Class<?> type) {
+			Object o = get();
+			// special case, for non-typed files if a default value (type) is given
+			if ((type == null) || (type == String.class)
+					|| !this.type.equals(String.class)) {
+				return o;
+			}
+			for (Conversion c = conversions; c != null; c = c.next) {
+				if (c.type == type) {
+					return c.value;
+				}
+			}
+			PropertyConverter<?> converter = converters.get(type);
+			if ((converter != null) && (converter instanceof SimpleTypePropertyConverter<?>)) {
+				o = ((SimpleTypePropertyConverter<?>)converter).toObject((String)o);
+				// a conversion lost to a concurrent one is simply redone
+				conversions = new Conversion(type, o, conversions);
+			}
+			return o;
+		}
+	}
+
+	/**
+	 * Value of a non-typed Entry converted to type.
+	 */
+	private static final class Conversion {
+		private final Class<?> type;
+		private final Object value;
+		private final Conversion next;
+
+		private Conversion(Class<?> type, Object value, Conversion next) {
+			this.type = type;
+			this.value = value;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * Change kept until the end of a batch.
+	 */
+	private static final class Change {
+		private final TypedProperties table;
+		private final TypedPropertyChangeEvent event;
+
+		private Change(TypedProperties table, TypedPropertyChangeEvent event) {
+			this.table = table;
+			this.event = event;
+		}
+	}
+
+	/**
+	 * Remembered outcome of resolve.
+	 */
+	private static final class Resolution {
+		private final long stamp;
+		private final TypedProperties table;
+
+		private Resolution(long stamp, TypedProperties table) {
+			this.stamp = stamp;
+			this.table = table;
+		}
 	}
 
 	/**
@@ -325,19 +1054,53 @@ public class TypedProperties {
 	 *            key to use for table
 	 */
 	protected void store(Properties p, String parentKey) {
-		for (String key : properties.keySet()) {
-			Object value = properties.get(key);
+		for (Map.Entry<String, Entry> entry : properties.entrySet()) {
+			String key = entry.getKey();
 			key = (parentKey != null) ? parentKey + "{" + key + "}" : key;
-			Class<?> type = value.getClass();
-			if (value instanceof List<?>) {
-				type = List.class;
+			Object value = entry.getValue().get();
+			if (value != null) {
+				storeValue(p, key, value);
+			}
+		}
+	}
+
+	/**
+	 * Writes the properties of this table, in order, to writer.
+	 */
+	void write(PropertiesWriter writer) throws IOException {
+		for (Map.Entry<String, Entry> entry : properties.entrySet()) {
+			Entry e = entry.getValue();
+			String raw = e.raw;
+			if (raw != null) {
+				// not converted yet, write back as read
+				writer.writeProperty(entry.getKey(), e.type, raw);
+			} else if (e.value != null) {
+				writer.writeProperty(entry.getKey(), e.value);
 			}
-			store(p, key, type, value);
 		}
 	}
 
+	/**
+	 * Store a single value into p under key
+	 * 
+	 * @param p
+	 *            java.util.Properties to store value into
+	 * @param key
+	 *            key to use for value
+	 * @param value
+	 *            value to store
+	 */
+	static void storeValue(Properties p, String key, Object value) {
+		Class<?> type = value.getClass();
+		if (value instanceof List<?>) {
+			type = List.class;
+		}
+		store(p, key, type, value);
+	}
+
 	@SuppressWarnings("unchecked")
-	private <V> void store(Properties p, String key, Class<?> type, V value) {
+	private static <V> void store(Properties p, String key, Class<?> type,
+			V value) {
 		PropertyConverter<V> converter = (PropertyConverter<V>) converters
 				.get(type);
 		if (converter == null) {
@@ -348,8 +1111,156 @@ public class TypedProperties {
 		}
 	}
 
-	protected void removeAll() {
+	protected synchronized void removeAll() {
 		properties.clear();
+		modified();
+	}
+
+	/**
+	 * @return a new, empty table with the same defaults as this table, to be
+	 *         filled and passed to replaceAll
+	 */
+	protected TypedProperties createReplacement() {
+		return new TypedProperties(defaults, false);
+	}
+
+	/**
+	 * Replaces all properties of this table by those of replacement, which was
+	 * created by createReplacement() and is no longer used by the caller. The
+	 * properties are swapped in as a whole, so a concurrent lookup finds either
+	 * all old or all new properties.
+	 * <p>
+	 * Only what changed is replaced: both trees are compared, and properties
+	 * and sub tables which are the same are kept, together with their
+	 * converted values. If nothing changed the table is left as it is. The
+	 * changes are fired together as a reload, so that listeners for all
+	 * properties receive a single event, rather than one per property.
+	 * 
+	 * @param replacement
+	 *            table holding the new properties
+	 */
+	protected void replaceAll(TypedProperties replacement) {
+		List<TypedPropertyChangeEvent> events = isObserved() ? new ArrayList<TypedPropertyChangeEvent>()
+				: null;
+		synchronized (this) {
+			if (diff(properties, replacement.properties, null, true, events)) {
+				for (Entry entry : replacement.properties.values()) {
+					if (entry.value instanceof TypedProperties) {
+						TypedProperties table = (TypedProperties) entry.value;
+						if (table.parent == replacement) {
+							table.parent = this;
+							table.setReadOnly(readOnly);
+						}
+					}
+				}
+				properties = replacement.properties;
+				modified();
+			}
+			replacement.properties = new ConcurrentSkipListMap<String, Entry>();
+		}
+		if ((events != null) && !events.isEmpty()) {
+			firePropertyChangeEvents(events);
+		}
+	}
+
+	/**
+	 * Compares the properties of a table before and after a reload, by a
+	 * merge of both sorted maps. Entries which are the same are put into
+	 * after, replacing their new copies, so that their converted values are
+	 * kept. Sub tables are compared recursively.
+	 * 
+	 * @param before
+	 *            properties before
+	 * @param after
+	 *            properties after, not yet in use
+	 * @param prefix
+	 *            key of the table compared, null for this table
+	 * @param keepTables
+	 *            keep the sub tables of before which are the same, which is
+	 *            only possible if their parent is kept
+	 * @param events
+	 *            list to add the changes to, or null
+	 * @return true if anything changed
+	 */
+	private boolean diff(Map<String, Entry> before, Map<String, Entry> after,
+			String prefix, boolean keepTables,
+			List<TypedPropertyChangeEvent> events) {
+		boolean changed = false;
+		Iterator<Map.Entry<String, Entry>> i = before.entrySet().iterator();
+		Iterator<Map.Entry<String, Entry>> j = after.entrySet().iterator();
+		Map.Entry<String, Entry> a = i.hasNext() ? i.next() : null;
+		Map.Entry<String, Entry> b = j.hasNext() ? j.next() : null;
+		while ((a != null) || (b != null)) {
+			int order = a == null ? 1 : b == null ? -1 : a.getKey().compareTo(
+					b.getKey());
+			if (order < 0) {
+				changed = true;
+				change(events, prefix, a.getKey(), a.getValue(), null);
+				a = i.hasNext() ? i.next() : null;
+			} else if (order > 0) {
+				changed = true;
+				change(events, prefix, b.getKey(), null, b.getValue());
+				b = j.hasNext() ? j.next() : null;
+			} else {
+				String key = a.getKey();
+				Entry old = a.getValue();
+				Entry entry = b.getValue();
+				if ((old.value instanceof TypedProperties)
+						&& (entry.value instanceof TypedProperties)) {
+					if (diff(((TypedProperties) old.value).properties,
+							((TypedProperties) entry.value).properties,
+							prefix != null ? KeyPath.append(prefix, key) : key,
+							false, events)) {
+						changed = true;
+					} else if (keepTables) {
+						after.put(key, old);
+					}
+				} else if (old.type.equals(entry.type) && old.isSame(entry)) {
+					after.put(key, old);
+				} else {
+					changed = true;
+					change(events, prefix, key, old, entry);
+				}
+				a = i.hasNext() ? i.next() : null;
+				b = j.hasNext() ? j.next() : null;
+			}
+		}
+		return changed;
+	}
+
+	private void change(List<TypedPropertyChangeEvent> events, String prefix,
+			String key, Entry old, Entry entry) {
+		if (events != null) {
+			events.add(new TypedPropertyChangeEvent(this,
+					prefix != null ? KeyPath.append(prefix, key) : key,
+					entry != null ? entry.type : old.type, old, entry, true));
+		}
+	}
+
+	private void setReadOnly(boolean readOnly) {
+		this.readOnly = readOnly;
+		for (Entry entry : properties.values()) {
+			if (entry.value instanceof TypedProperties) {
+				TypedProperties table = (TypedProperties) entry.value;
+				if (table.parent == this) {
+					table.setReadOnly(readOnly);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns an immutable snapshot of this table. All properties visible from
+	 * this table, including those of its sub tables and of its defaults, are
+	 * copied into a single hash index on the full key, so that a lookup is a
+	 * single probe without walking tables or defaults. Sub tables of the
+	 * snapshot are snapshots themselves. Later changes to this table or its
+	 * defaults are not reflected in the snapshot.
+	 * 
+	 * @return read-only snapshot
+	 */
+	public TypedProperties snapshot() {
+		return new Frozen(this, null, null);
 	}
 
 	/**
@@ -386,7 +1297,25 @@ public class TypedProperties {
 	}
 
 	public int get(String key, int defaultValue) {
-		return get(key, (Integer) defaultValue);
+		Object o = getValue(KeyPath.compile(key), 0, Integer.class);
+		return o != null ? ((Integer) o).intValue() : defaultValue;
+	}
+
+	/**
+	 * Set property long
+	 * 
+	 * @param key
+	 *            property name
+	 * @param value
+	 *            property long
+	 */
+	public void set(String key, long value) {
+		set(key, (Long) value);
+	}
+
+	public long get(String key, long defaultValue) {
+		Object o = getValue(KeyPath.compile(key), 0, Long.class);
+		return o != null ? ((Long) o).longValue() : defaultValue;
 	}
 
 	/**
@@ -402,7 +1331,25 @@ public class TypedProperties {
 	}
 
 	public float get(String key, float defaultValue) {
-		return get(key, (Float) defaultValue);
+		Object o = getValue(KeyPath.compile(key), 0, Float.class);
+		return o != null ? ((Float) o).floatValue() : defaultValue;
+	}
+
+	/**
+	 * Set property double
+	 * 
+	 * @param key
+	 *            property name
+	 * @param value
+	 *            property double
+	 */
+	public void set(String key, double value) {
+		set(key, (Double) value);
+	}
+
+	public double get(String key, double defaultValue) {
+		Object o = getValue(KeyPath.compile(key), 0, Double.class);
+		return o != null ? ((Double) o).doubleValue() : defaultValue;
 	}
 
 	/**
@@ -418,32 +1365,64 @@ public class TypedProperties {
 	}
 
 	public boolean get(String key, boolean defaultValue) {
-		return get(key, (Boolean) defaultValue);
+		Object o = getValue(KeyPath.compile(key), 0, Boolean.class);
+		return o != null ? ((Boolean) o).booleanValue() : defaultValue;
 	}
 
-    private static HashMap<Class<?>, PropertyConverter<?>> converters;
+    private static final ConcurrentMap<Class<?>, PropertyConverter<?>> converters = new ConcurrentHashMap<Class<?>, PropertyConverter<?>>();
 
-    public synchronized static PropertyConverter<?> getConverter(Class<?> type) {
-		if (converters == null) {
-			converters = new HashMap<Class<?>, PropertyConverter<?>>();
-		}
+	/**
+	 * Types by name, for the types registered and the types found by
+	 * reflection, or NO_TYPE for names which are not a type.
+	 */
+	private static final ConcurrentMap<String, Class<?>> types = new ConcurrentHashMap<String, Class<?>>();
+	private static final Class<?> NO_TYPE = NoType.class;
+	private static final int MAX_TYPES = 1024;
+
+    public static PropertyConverter<?> getConverter(Class<?> type) {
 		return converters.get(type);
     }
     
 	/**
 	 * Register Converter to use for "type" to String and vice-versa
-	 * conversions.
+	 * conversions. The type can then also be found by name when loading.
 	 * 
 	 * @param type
 	 *            name of the type to store converter for
 	 * @param converter
 	 *            converter for this type
 	 */
-	public synchronized static void register(Class<?> type, PropertyConverter<?> converter) {
-		if (converters == null) {
-			converters = new HashMap<Class<?>, PropertyConverter<?>>();
-		}
+	public static void register(Class<?> type, PropertyConverter<?> converter) {
 		converters.put(type, converter);
+		types.put(type.getName(), type);
+	}
+
+	/**
+	 * Returns the type for a type name as written in a properties file. Names
+	 * of registered types are found without reflection. Other names are looked
+	 * up once with Class.forName, after which the outcome is remembered.
+	 * 
+	 * @param typeName
+	 *            fully qualified class name
+	 * @return type, or null if there is no such class
+	 */
+	static Class<?> lookupType(String typeName) {
+		Class<?> type = types.get(typeName);
+		if (type == null) {
+			try {
+				type = Class.forName(typeName);
+			} catch (ClassNotFoundException e) {
+				System.err.println(e);
+				type = NO_TYPE;
+			} catch (LinkageError e) {
+				System.err.println(e);
+				type = NO_TYPE;
+			}
+			if (types.size() < MAX_TYPES) {
+				types.putIfAbsent(typeName, type);
+			}
+		}
+		return type != NO_TYPE ? type : null;
 	}
 
     static {
@@ -452,7 +1431,9 @@ public class TypedProperties {
 		register(File.class, new FilePropertyConverter());
 		register(URL.class, new URLPropertyConverter());
 		register(Integer.class, new IntegerPropertyConverter());
+		register(Long.class, new LongPropertyConverter());
 		register(Float.class, new FloatPropertyConverter());
+		register(Double.class, new DoublePropertyConverter());
 		register(Boolean.class, new BooleanPropertyConverter());
 
 		// combined types
@@ -461,6 +1442,195 @@ public class TypedProperties {
 		register(List.class, new ListPropertyConverter(converters));
 	}
 
+	/**
+	 * Marks names which are not a type.
+	 */
+	private static final class NoType {
+	}
+
+	/**
+	 * Batch of changes, see batch().
+	 */
+	public static final class Batch implements Closeable {
+		private TypedProperties properties;
+
+		private Batch(TypedProperties properties) {
+			this.properties = properties;
+		}
+
+		/**
+		 * Commits the batch, only the first call has effect.
+		 */
+		public void commit() {
+			if (properties != null) {
+				TypedProperties p = properties;
+				properties = null;
+				p.commit();
+			}
+		}
+
+		public void close() {
+			commit();
+		}
+	}
+
+	/**
+	 * Read-only snapshot, see snapshot(). The direct properties are kept in the
+	 * normal map, for storing, while lookups go to an open addressed hash
+	 * index of full keys with a parallel array of entries.
+	 */
+	private static final class Frozen extends TypedProperties {
+		private String[] keys;
+		private Entry[] entries;
+		private int mask;
+
+		private Frozen(TypedProperties source, Frozen parent, String name) {
+			super();
+			super.parent = parent;
+			super.name = name;
+
+			Set<String> names = new TreeSet<String>();
+			source.collectKeys(names);
+
+			List<String> fullKeys = new ArrayList<String>();
+			List<Entry> entries = new ArrayList<Entry>();
+			for (String key : names) {
+				Entry entry = source.getConvertedEntry(KeyPath.compile(key), 0);
+				if (entry == null) {
+					continue;
+				}
+				if (entry.value instanceof TypedProperties) {
+					Frozen table = new Frozen((TypedProperties) entry.value,
+							this, key);
+					entry = new Entry(entry.type, table);
+					for (int i = 0; i < table.keys.length; i++) {
+						String subKey = table.keys[i];
+						if (subKey != null) {
+							fullKeys.add(KeyPath.append(key, subKey));
+							entries.add(table.entries[i]);
+						}
+					}
+				} else if (entry.value instanceof List<?>) {
+					entry = new Entry(entry.type, Collections
+							.unmodifiableList(new ArrayList<Object>(
+									(List<?>) entry.value)));
+				}
+				super.properties.put(key, entry);
+				fullKeys.add(key);
+				entries.add(entry);
+			}
+
+			int capacity = 2;
+			while (capacity < fullKeys.size() * 2) {
+				capacity <<= 1;
+			}
+			keys = new String[capacity];
+			this.entries = new Entry[capacity];
+			mask = capacity - 1;
+			for (int i = 0; i < fullKeys.size(); i++) {
+				String key = fullKeys.get(i);
+				int slot = hash(key) & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				this.entries[slot] = entries.get(i);
+			}
+
+			setReadOnly();
+		}
+
+		private static int hash(String key) {
+			int h = key.hashCode();
+			return h ^ (h >>> 16);
+		}
+
+		/**
+		 * @return slot of key, or -1
+		 */
+		private int indexOf(String key) {
+			int slot = find(key);
+			if ((slot < 0) && (key.indexOf('{') >= 0)) {
+				// spelled differently, e.g. a{b}c for a{bc}
+				String canonical = KeyPath.compile(key).getCanonicalKey();
+				if (!canonical.equals(key)) {
+					slot = find(canonical);
+				}
+			}
+			return slot;
+		}
+
+		private int find(String key) {
+			int slot = hash(key) & mask;
+			while (keys[slot] != null) {
+				if (keys[slot].equals(key)) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private Object getValue(String key, Class<?> type) {
+			int slot = indexOf(key);
+			return slot >= 0 ? entries[slot].get(type) : null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> T get(String key, T defaultValue) {
+			Object o = getValue(key, defaultValue != null ? defaultValue
+					.getClass() : null);
+			return o != null ? (T) o : defaultValue;
+		}
+
+		@Override
+		public int get(String key, int defaultValue) {
+			Object o = getValue(key, Integer.class);
+			return o != null ? ((Integer) o).intValue() : defaultValue;
+		}
+
+		@Override
+		public long get(String key, long defaultValue) {
+			Object o = getValue(key, Long.class);
+			return o != null ? ((Long) o).longValue() : defaultValue;
+		}
+
+		@Override
+		public float get(String key, float defaultValue) {
+			Object o = getValue(key, Float.class);
+			return o != null ? ((Float) o).floatValue() : defaultValue;
+		}
+
+		@Override
+		public double get(String key, double defaultValue) {
+			Object o = getValue(key, Double.class);
+			return o != null ? ((Double) o).doubleValue() : defaultValue;
+		}
+
+		@Override
+		public boolean get(String key, boolean defaultValue) {
+			Object o = getValue(key, Boolean.class);
+			return o != null ? ((Boolean) o).booleanValue() : defaultValue;
+		}
+
+		@Override
+		public Class<?> getType(String key) {
+			int slot = indexOf(key);
+			return slot >= 0 ? entries[slot].type : null;
+		}
+
+		@Override
+		protected <T> void setProperty(String key, Class<?> type, T value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public TypedProperties snapshot() {
+			return this;
+		}
+	}
+
 	private static final class Empty extends TypedProperties {
 		private Empty() {
 			super(null, "empty");
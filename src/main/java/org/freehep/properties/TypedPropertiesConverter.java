@@ -1,9 +1,9 @@
 // Copyright FreeHEP, 2007-2009
 package org.freehep.properties;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -30,33 +30,34 @@ public class TypedPropertiesConverter implements
 
 	public void load(TypedProperties properties, String key, Class<?> type,
 			String value) {
-		Matcher m = MAP_PATTERN.matcher(key);
-		if (m.matches()) {
-			String mainKey = m.group(1);
-			TypedProperties subProperties = properties.get(mainKey,
-					(TypedProperties) null);
-			if (subProperties == null) {
-				subProperties = new TypedProperties(properties, mainKey);
+		KeyPath path = KeyPath.compile(key);
+		if (path.size() > 1) {
+			TypedProperties subProperties = properties;
+			for (int i = 0; i < path.size() - 1; i++) {
+				String mainKey = path.get(i);
+				TypedProperties table = subProperties.get(mainKey,
+						(TypedProperties) null);
+				if (table == null) {
+					table = new TypedProperties(subProperties, mainKey);
+				}
+				subProperties = table;
 			}
 
-			String subKey = m.group(2);
-			if (!m.group(3).equals("")) {
-				// FIXME, assumed it is {}{}
-				load(subProperties, subKey + m.group(3), type, value);
+			// key{name}[index] is an entry of a list in the sub table
+			String subKey = path.getName();
+			PropertyConverter<?> converter = converters.get(KeyPath.compile(
+					subKey).getListIndex() >= 0 ? List.class : type);
+			if (converter == null) {
+				System.err
+						.println("TypedProperties.load: No Converter defined for '"
+								+ type + "' of '" + subKey + "'");
 			} else {
-				PropertyConverter<?> converter = converters.get(type);
-				if (converter == null) {
+				try {
+					converter.load(subProperties, subKey, type, value);
+				} catch (Exception e) {
 					System.err
-							.println("TypedProperties.load: No Converter defined for '"
-									+ type + "' of '" + subKey + "'");
-				} else {
-					try {
-						converter.load(subProperties, subKey, type, value);
-					} catch (Exception e) {
-						System.err
-								.println("TypedProperties.load: Could not load property '"
-										+ subKey + "' with type '" + type + "'");
-					}
+							.println("TypedProperties.load: Could not load property '"
+									+ subKey + "' with type '" + type + "'");
 				}
 			}
 		}
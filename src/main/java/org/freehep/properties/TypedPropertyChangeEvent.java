@@ -0,0 +1,175 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.beans.PropertyChangeEvent;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Change of a property of a TypedProperties table or of one of its sub
+ * tables. The property name is the key of the property relative to the table
+ * the event is delivered for, for instance table{1}{name}.
+ * <p>
+ * An event without key, as delivered at the end of a batch or reload in
+ * which more than one property changed, stands for a set of changes. It has
+ * no type and no old or new value, but lists the changes, if known.
+ * <p>
+ * A reload of the properties, for instance from a file which was changed,
+ * is delivered to listeners for all properties as a single event without key
+ * for which isReload() is true, listing the changes, even if only one
+ * property changed. Listeners for a key receive the change of that key,
+ * which is marked as reload as well.
+ * <p>
+ * Values which were read, but not yet converted, are converted only when
+ * asked for by getOldValue() or getNewValue().
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class TypedPropertyChangeEvent extends PropertyChangeEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Class<?> type;
+	private final List<TypedPropertyChangeEvent> changes;
+	private final boolean reload;
+	private Object oldValue;
+	private Object newValue;
+
+	/**
+	 * Value which is converted when first asked for.
+	 */
+	interface Value {
+		Object get();
+	}
+
+	/**
+	 * @param source
+	 *            table for which the event is delivered
+	 * @param key
+	 *            key relative to source, or null if any properties may have
+	 *            changed
+	 * @param type
+	 *            type of the property
+	 * @param oldValue
+	 *            value before, or null if it was not set
+	 * @param newValue
+	 *            value after, or null if it was removed
+	 */
+	public TypedPropertyChangeEvent(TypedProperties source, String key,
+			Class<?> type, Object oldValue, Object newValue) {
+		this(source, key, type, oldValue, newValue, false);
+	}
+
+	/**
+	 * @param oldValue
+	 *            value before, a Value, or null
+	 * @param newValue
+	 *            value after, a Value, or null
+	 */
+	TypedPropertyChangeEvent(TypedProperties source, String key,
+			Class<?> type, Object oldValue, Object newValue, boolean reload) {
+		super(source, key, null, null);
+		this.type = type;
+		this.changes = null;
+		this.reload = reload;
+		this.oldValue = oldValue;
+		this.newValue = newValue;
+	}
+
+	/**
+	 * Creates an event for a set of changes.
+	 *
+	 * @param source
+	 *            table for which the event is delivered
+	 * @param changes
+	 *            changes, with keys relative to source, or null if unknown
+	 */
+	public TypedPropertyChangeEvent(TypedProperties source,
+			List<TypedPropertyChangeEvent> changes) {
+		this(source, changes, false);
+	}
+
+	TypedPropertyChangeEvent(TypedProperties source,
+			List<TypedPropertyChangeEvent> changes, boolean reload) {
+		super(source, null, null, null);
+		this.type = null;
+		this.changes = changes != null ? Collections.unmodifiableList(changes)
+				: null;
+		this.reload = reload;
+	}
+
+	/**
+	 * @return key relative to the source, or null
+	 */
+	public String getKey() {
+		return getPropertyName();
+	}
+
+	@Override
+	public Object getOldValue() {
+		return get(oldValue);
+	}
+
+	@Override
+	public Object getNewValue() {
+		return get(newValue);
+	}
+
+	private static Object get(Object value) {
+		return value instanceof Value ? ((Value) value).get() : value;
+	}
+
+	/**
+	 * @return value before, possibly not yet converted
+	 */
+	Object oldValue() {
+		return oldValue;
+	}
+
+	/**
+	 * @return value after, possibly not yet converted
+	 */
+	Object newValue() {
+		return newValue;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		oldValue = getOldValue();
+		newValue = getNewValue();
+		out.defaultWriteObject();
+	}
+
+	/**
+	 * @return type of the property, or null
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * @return the changes for an event without key, in order, or null if they
+	 *         are not known or this event is for a single key
+	 */
+	public List<TypedPropertyChangeEvent> getChanges() {
+		return changes;
+	}
+
+	/**
+	 * @return true if the change was made by a reload of the properties
+	 */
+	public boolean isReload() {
+		return reload;
+	}
+
+	/**
+	 * @return this event as seen from table parent, in which the source is
+	 *         stored under name
+	 */
+	TypedPropertyChangeEvent forParent(TypedProperties parent, String name) {
+		return new TypedPropertyChangeEvent(parent, getKey() != null ? KeyPath
+				.append(name, getKey()) : name, type, oldValue, newValue,
+				reload);
+	}
+}
@@ -0,0 +1,61 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class GuessTypeTest {
+
+	private static final String[] VALUES = { "", "0", "12", "-12", "+12", "-",
+			"+", "007", "2147483647", "2147483648", "-2147483648",
+			"-2147483649", "99999999999999999999", "\u0661\u0662", " 12",
+			"12 ", "1.5", ".5", "5.", ".", "-.5e3", "1e", "1e+", "1e-5",
+			"1E5f", "1.5F", "2d", "2D", "2x", "1.5ff", "1..5", " 1.5 \t",
+			"NaN", "-NaN", "NaNa", "Infinity", "+Infinity", "-Infinityf",
+			"0x1p3", "0X1.8P-1f", "0x.8p1", "0x1", "0x1p", "0xp1", "0x1.p1d",
+			"true", "TRUE", "False", "yes", "Duns",
+			"http://java.freehep.org", "1e5 ", "e5", "-e5" };
+
+	private static boolean parsesAsInteger(String s) {
+		try {
+			Integer.parseInt(s);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static boolean parsesAsFloat(String s) {
+		try {
+			Float.parseFloat(s);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	@Test
+	public void likeParse() {
+		for (String value : VALUES) {
+			Assert.assertEquals(value, parsesAsInteger(value),
+					PersistentTypedProperties.isInteger(value));
+			Assert.assertEquals(value, parsesAsFloat(value),
+					PersistentTypedProperties.isFloat(value));
+		}
+	}
+
+	@Test
+	public void guessType() {
+		Assert.assertEquals(Integer.class, PersistentTypedProperties
+				.guessType("123456"));
+		Assert.assertEquals(Float.class, PersistentTypedProperties
+				.guessType("42.7"));
+		Assert.assertEquals(Boolean.class, PersistentTypedProperties
+				.guessType("true"));
+		Assert.assertEquals(String.class, PersistentTypedProperties
+				.guessType("Duns"));
+	}
+}
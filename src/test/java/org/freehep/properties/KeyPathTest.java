@@ -0,0 +1,71 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class KeyPathTest {
+
+	private static final String[] KEYS = { "Name", "author{name}",
+			"table{1}{name}", "a{b}c", "a{b}c{d}", "{a}b", "a{}b", "a{b",
+			"a}b{c}", "a{b{c}}d", "a{b}\nc", "StringList[2]", "a{b}[1]" };
+
+	/**
+	 * Splits key the way TypedProperties used to, by matching MAP_PATTERN.
+	 */
+	private static List<String> split(String key) {
+		List<String> segments = new ArrayList<String>();
+		Matcher m = TypedPropertiesConverter.MAP_PATTERN.matcher(key);
+		while (m.matches()) {
+			segments.add(m.group(1));
+			key = m.group(2) + m.group(3);
+			m = TypedPropertiesConverter.MAP_PATTERN.matcher(key);
+		}
+		segments.add(key);
+		return segments;
+	}
+
+	@Test
+	public void splitLikePattern() {
+		for (String key : KEYS) {
+			KeyPath path = KeyPath.compile(key);
+			List<String> segments = new ArrayList<String>();
+			for (int i = 0; i < path.size(); i++) {
+				segments.add(path.get(i));
+			}
+			Assert.assertEquals(key, split(key), segments);
+		}
+	}
+
+	@Test
+	public void compileIsShared() {
+		Assert.assertSame(KeyPath.compile("table{1}{name}"), KeyPath
+				.compile(new String("table{1}{name}")));
+	}
+
+	@Test
+	public void kind() {
+		Assert.assertEquals(KeyPath.Kind.PLAIN, KeyPath.compile("Name")
+				.getKind());
+		Assert.assertEquals(KeyPath.Kind.TABLE, KeyPath.compile("a{b}[1]")
+				.getKind());
+		Assert.assertEquals(KeyPath.Kind.LIST, KeyPath.compile("a[1]{b}")
+				.getKind());
+	}
+
+	@Test
+	public void listIndex() {
+		KeyPath path = KeyPath.compile("StringList[12]");
+		Assert.assertEquals("StringList", path.getListKey());
+		Assert.assertEquals(12, path.getListIndex());
+		Assert.assertEquals(-1, KeyPath.compile("StringList[]").getListIndex());
+		Assert.assertNull(KeyPath.compile("Name").getListKey());
+	}
+}
@@ -0,0 +1,36 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class LookupTypeTest {
+
+	@Test
+	public void registered() {
+		Assert.assertEquals(Integer.class, TypedProperties
+				.lookupType("java.lang.Integer"));
+		Assert.assertEquals(File.class, TypedProperties
+				.lookupType("java.io.File"));
+	}
+
+	@Test
+	public void reflection() {
+		Assert.assertEquals(StringBuilder.class, TypedProperties
+				.lookupType("java.lang.StringBuilder"));
+		Assert.assertEquals(StringBuilder.class, TypedProperties
+				.lookupType("java.lang.StringBuilder"));
+	}
+
+	@Test
+	public void unknown() {
+		Assert.assertNull(TypedProperties.lookupType("no.such.Type"));
+		Assert.assertNull(TypedProperties.lookupType("no.such.Type"));
+		Assert.assertNull(TypedProperties.lookupType("Mark"));
+	}
+}
@@ -0,0 +1,95 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class PropertiesReaderTest {
+
+	private static final String[] INPUTS = {
+			"Name=java.lang.String Mark Donszelmann\n",
+			"# comment\n! other comment\nName = java.lang.Integer 12\n",
+			"  Key1:Value\r\nKey2 Value\rKey3\t\fValue\n",
+			"Key = \n",
+			"Key\n",
+			"Key=\\",
+			"Key=a\\\n    b\\\r\n\tc\n",
+			"Key=a\\\n\nOther=b\n",
+			"Ke\\ y\\=\\:=v\\ a\\tl\\nu\\re\\f\\\\\n",
+			"Key=\\u0041\\u00e9\\u20ac\n",
+			"Key=caf\u00e9\n",
+			"author{name}=java.lang.String Duns\nList[0]=java.lang.Integer 1\n",
+			"a\\{b\\}=x\nc\\[1\\]=y\n",
+			"Key := = value\n",
+			"Key  \\\n  = value\n",
+			"# comment \\\nKey=value\n",
+			"Key=value # not a comment\n",
+			"Key=1\nKey=2\n",
+			"\\\n#a=b\n", "  \\\r\n ! comment\nKey=value\n",
+			"\\\n\nKey=value\n", "Key=value\n\\\n", "\\\r\n",
+			"\n\n   \n\t\nKey=value", "" };
+
+	private static Map<String, String> read(String input) {
+		final Map<String, String> result = new HashMap<String, String>();
+		PropertiesReader.read(ByteBuffer.wrap(bytes(input)),
+				new PropertiesReader.Handler() {
+					public void entry(String key, KeyPath.Kind kind,
+							String typeName, String value) {
+						Assert.assertEquals(key, KeyPath.compile(key).getKind(),
+								kind);
+						result.put(key, typeName == null ? value : typeName
+								+ " " + value);
+					}
+				});
+		return result;
+	}
+
+	private static byte[] bytes(String input) {
+		byte[] bytes = new byte[input.length()];
+		for (int i = 0; i < input.length(); i++) {
+			bytes[i] = (byte) input.charAt(i);
+		}
+		return bytes;
+	}
+
+	@Test
+	public void readLikeProperties() throws IOException {
+		for (String input : INPUTS) {
+			Properties p = new Properties();
+			p.load(new ByteArrayInputStream(bytes(input)));
+			Map<String, String> expected = new HashMap<String, String>();
+			for (String key : p.stringPropertyNames()) {
+				expected.put(key, p.getProperty(key));
+			}
+			Assert.assertEquals(input, expected, read(input));
+		}
+	}
+
+	@Test
+	public void splitTypeName() {
+		PropertiesReader.read(ByteBuffer
+				.wrap(bytes("Name=java.lang.String Mark Donszelmann\n")),
+				new PropertiesReader.Handler() {
+					public void entry(String key, KeyPath.Kind kind,
+							String typeName, String value) {
+						Assert.assertEquals("java.lang.String", typeName);
+						Assert.assertEquals("Mark Donszelmann", value);
+					}
+				});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void malformedUnicode() {
+		read("Key=\\u12G4\n");
+	}
+}
@@ -0,0 +1,168 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class PropertiesSnapshotTest {
+
+	private static final String INPUT = "# comment\n"
+			+ "Name=java.lang.String Mark Donszelmann\n"
+			+ "author{name}=java.lang.String Duns\n"
+			+ "List[0]=java.lang.Integer 1\nList[1]=java.lang.Integer 1\n"
+			+ "Untyped=value\nKey=\\u0041\\u00e9\\u20ac\n" + "Empty=\n";
+	private static final byte[] DIGEST = { 1, 2, 3, 4 };
+	private static final long LENGTH = 1234;
+	private static final long MODIFIED = 1234567890000L;
+
+	private File file = new File("target", "PropertiesSnapshot.tpbin");
+	private PropertiesSnapshot snapshot = new PropertiesSnapshot(file);
+
+	@After
+	public void deleteFile() {
+		snapshot.delete();
+	}
+
+	private void write(String input) throws IOException {
+		PropertiesSnapshot.Recorder recorder = new PropertiesSnapshot.Recorder(
+				null);
+		PropertiesReader.read(bytes(input), recorder);
+		snapshot.write(recorder, DIGEST, LENGTH, MODIFIED);
+	}
+
+	private static class Recorder implements PropertiesReader.Handler {
+		private List<String> entries = new ArrayList<String>();
+
+		public void entry(String key, KeyPath.Kind kind, String typeName,
+				String value) {
+			entries.add(key + "|" + kind + "|" + typeName + "|" + value);
+		}
+	}
+
+	private static ByteBuffer bytes(String input) {
+		byte[] bytes = new byte[input.length()];
+		for (int i = 0; i < input.length(); i++) {
+			bytes[i] = (byte) input.charAt(i);
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+
+	@Test
+	public void sameAsParsed() throws IOException {
+		Recorder parsed = new Recorder();
+		PropertiesReader.read(bytes(INPUT), parsed);
+
+		write(INPUT);
+		PropertiesSnapshot.Contents contents = snapshot.read(LENGTH, MODIFIED);
+		org.junit.Assert.assertArrayEquals(DIGEST, contents.getDigest());
+		Recorder read = new Recorder();
+		org.junit.Assert.assertTrue(contents.load(read));
+		org.junit.Assert.assertEquals(parsed.entries, read.entries);
+	}
+
+	@Test
+	public void sameAsWritten() throws IOException {
+		TypedProperties table = new TypedProperties();
+		table.set("Name", "Mark Donszelmann");
+		table.set("author{name}", "Duns");
+		table.set("author{tel}", 9624);
+		table.set("List", Arrays.asList(1, 1));
+		table.set("Dir", new File("dir"));
+		table.set("Key", "\u0041\u00e9\u20ac\t=: ");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PropertiesSnapshot.Recorder written = new PropertiesSnapshot.Recorder(
+				null);
+		PropertiesWriter writer = new PropertiesWriter(bytes, written);
+		writer.writeHeader("comment");
+		writer.write(table);
+		writer.flush();
+		snapshot.write(written, DIGEST, LENGTH, MODIFIED);
+
+		Recorder parsed = new Recorder();
+		PropertiesReader.read(ByteBuffer.wrap(bytes.toByteArray()), parsed);
+		Recorder read = new Recorder();
+		org.junit.Assert.assertTrue(snapshot.read(LENGTH, MODIFIED).load(read));
+		org.junit.Assert.assertEquals(parsed.entries, read.entries);
+	}
+
+	@Test
+	public void outdated() throws IOException {
+		write(INPUT);
+		org.junit.Assert.assertNull(snapshot.read(LENGTH + 1, MODIFIED));
+		org.junit.Assert.assertNull(snapshot.read(LENGTH, MODIFIED + 1000));
+	}
+
+	@Test
+	public void missing() throws IOException {
+		org.junit.Assert.assertNull(snapshot.read(LENGTH, MODIFIED));
+	}
+
+	@Test
+	public void unreadable() throws IOException {
+		file.mkdir();
+		org.junit.Assert.assertNull(snapshot.read(LENGTH, MODIFIED));
+	}
+
+	@Test
+	public void truncated() throws IOException {
+		write(INPUT);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 3);
+		} finally {
+			raf.close();
+		}
+		Recorder read = new Recorder();
+		org.junit.Assert.assertFalse(snapshot.read(LENGTH, MODIFIED)
+				.load(read));
+		org.junit.Assert.assertTrue(read.entries.isEmpty());
+	}
+
+	/**
+	 * Overwrites the int at position, the string count being at 25 and the
+	 * length of the first string at 29.
+	 */
+	private void damage(long position, int value) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(position);
+			raf.writeInt(value);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Test
+	public void damagedCount() throws IOException {
+		write(INPUT);
+		damage(25, Integer.MAX_VALUE);
+		Recorder read = new Recorder();
+		org.junit.Assert.assertFalse(snapshot.read(LENGTH, MODIFIED)
+				.load(read));
+		org.junit.Assert.assertTrue(read.entries.isEmpty());
+	}
+
+	@Test
+	public void damagedLength() throws IOException {
+		write(INPUT);
+		damage(29, Integer.MAX_VALUE - 1);
+		Recorder read = new Recorder();
+		org.junit.Assert.assertFalse(snapshot.read(LENGTH, MODIFIED)
+				.load(read));
+		org.junit.Assert.assertTrue(read.entries.isEmpty());
+	}
+}
@@ -0,0 +1,94 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class PropertiesWriterTest {
+
+	private TypedProperties createProperties() {
+		TypedProperties properties = new TypedProperties();
+		properties.set("Name", "Mark Donszelmann");
+		properties.set("Spaces", "  leading and trailing  ");
+		properties.set("Special", "a=b:c#d!e\\f\tg\nh\ri\fj");
+		properties.set("Unicode", "café € \u0001");
+		properties.set("Key with spaces=and:separators", 12);
+		properties.set("author{name}", "Duns");
+		properties.set("author{tel}{home}", 123456L);
+		properties.set("a2", true);
+		properties.set("Ratio", 0.5);
+		properties.set("File", new File("/tmp/freehep"));
+		properties.set("List", Arrays.asList("a", "b", "c"));
+		List<Integer> longList = new ArrayList<Integer>();
+		for (int i = 0; i < 12; i++) {
+			longList.add(i);
+		}
+		properties.set("LongList", longList);
+		return properties;
+	}
+
+	private static Properties load(byte[] bytes) throws IOException {
+		Properties p = new Properties();
+		p.load(new ByteArrayInputStream(bytes));
+		return p;
+	}
+
+	@Test
+	public void writeLikeProperties() throws IOException {
+		TypedProperties properties = createProperties();
+
+		Properties expected = new Properties();
+		properties.store(expected, null);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PropertiesWriter writer = new PropertiesWriter(bytes);
+		writer.writeHeader("first\nsecond");
+		writer.write(properties);
+		writer.flush();
+
+		Assert.assertEquals(expected, load(bytes.toByteArray()));
+
+		// same escapes as Properties.store
+		ByteArrayOutputStream stored = new ByteArrayOutputStream();
+		expected.store(stored, "first\nsecond");
+		List<String> expectedLines = Arrays.asList(new String(stored
+				.toByteArray(), "ISO-8859-1").split("\\R"));
+		for (String line : new String(bytes.toByteArray(), "ISO-8859-1")
+				.split("\\R")) {
+			if (!line.startsWith("#") || line.equals("#first")
+					|| line.equals("#second")) {
+				Assert.assertTrue(line, expectedLines.contains(line));
+			}
+		}
+	}
+
+	@Test
+	public void depthFirstOrder() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PropertiesWriter writer = new PropertiesWriter(bytes);
+		writer.write(createProperties());
+		writer.flush();
+
+		List<String> keys = new ArrayList<String>();
+		for (String line : new String(bytes.toByteArray(), "ISO-8859-1")
+				.split("\\R")) {
+			keys.add(line.substring(0, line.indexOf('=')));
+		}
+		Assert.assertTrue(keys.indexOf("author{tel}{home}") == keys
+				.indexOf("author{name}") + 1);
+		Assert.assertTrue(keys.indexOf("LongList[2]") < keys
+				.indexOf("LongList[10]"));
+	}
+}
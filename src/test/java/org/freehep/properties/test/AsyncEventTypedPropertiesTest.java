@@ -0,0 +1,133 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.freehep.properties.TypedProperties;
+import org.freehep.properties.TypedPropertyChangeEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class AsyncEventTypedPropertiesTest {
+
+	private ExecutorService executor;
+	private TypedProperties properties;
+
+	private static class Recorder implements PropertyChangeListener {
+		private List<TypedPropertyChangeEvent> events = Collections
+				.synchronizedList(new ArrayList<TypedPropertyChangeEvent>());
+		private volatile Thread thread;
+
+		public void propertyChange(PropertyChangeEvent evt) {
+			thread = Thread.currentThread();
+			events.add((TypedPropertyChangeEvent) evt);
+		}
+	}
+
+	@Before
+	public void createProperties() {
+		executor = Executors.newCachedThreadPool();
+		properties = new TypedProperties();
+		properties.setExecutor(executor);
+	}
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void deliveredOnExecutor() throws InterruptedException {
+		Recorder recorder = new Recorder();
+		properties.addPropertyChangeListener(recorder);
+		properties.set("Name", "name");
+		org.junit.Assert.assertTrue(properties.awaitQuiescence(10,
+				TimeUnit.SECONDS));
+
+		org.junit.Assert.assertEquals(1, recorder.events.size());
+		org.junit.Assert.assertEquals("Name", recorder.events.get(0).getKey());
+		org.junit.Assert.assertNotSame(Thread.currentThread(), recorder.thread);
+		org.junit.Assert.assertSame(executor, properties.getExecutor());
+	}
+
+	@Test
+	public void coalesced() throws InterruptedException {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Recorder recorder = new Recorder();
+		properties.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				recorder.propertyChange(evt);
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					// finish
+				}
+			}
+		});
+
+		properties.set("Count", 1);
+		org.junit.Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+		// the listener is busy, yet changes continue
+		properties.set("Count", 2);
+		properties.set("Count", 3);
+		properties.set("Count", 4);
+		org.junit.Assert.assertEquals(1, recorder.events.size());
+		release.countDown();
+		org.junit.Assert.assertTrue(properties.awaitQuiescence(10,
+				TimeUnit.SECONDS));
+
+		org.junit.Assert.assertEquals(2, recorder.events.size());
+		TypedPropertyChangeEvent merged = recorder.events.get(1);
+		org.junit.Assert.assertEquals("Count", merged.getKey());
+		org.junit.Assert.assertEquals(1, merged.getOldValue());
+		org.junit.Assert.assertEquals(4, merged.getNewValue());
+	}
+
+	@Test
+	public void subTableAndKeyListener() throws InterruptedException {
+		Recorder all = new Recorder();
+		Recorder name = new Recorder();
+		properties.set("table{name}", "first");
+		properties.awaitQuiescence(10, TimeUnit.SECONDS);
+		properties.addPropertyChangeListener(all);
+		properties.addPropertyChangeListener("table{name}", name);
+
+		TypedProperties table = properties.get("table");
+		org.junit.Assert.assertSame(executor, table.getExecutor());
+		table.set("name", "second");
+		table.set("size", 2);
+		org.junit.Assert.assertTrue(table.awaitQuiescence(10,
+				TimeUnit.SECONDS));
+
+		org.junit.Assert.assertEquals(1, name.events.size());
+		org.junit.Assert.assertEquals("second", name.events.get(0)
+				.getNewValue());
+		org.junit.Assert.assertFalse(all.events.isEmpty());
+	}
+
+	@Test
+	public void synchronous() throws InterruptedException {
+		TypedProperties sync = new TypedProperties();
+		Recorder recorder = new Recorder();
+		sync.addPropertyChangeListener(recorder);
+		sync.set("Name", "name");
+		org.junit.Assert.assertNull(sync.getExecutor());
+		org.junit.Assert.assertSame(Thread.currentThread(), recorder.thread);
+		org.junit.Assert.assertTrue(sync.awaitQuiescence(0, TimeUnit.SECONDS));
+	}
+}
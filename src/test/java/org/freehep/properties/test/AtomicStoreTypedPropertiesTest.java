@@ -0,0 +1,65 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.freehep.properties.TypedProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class AtomicStoreTypedPropertiesTest {
+
+	private File dir = new File("target/atomic");
+	private File file = new File(dir, "AtomicProperties.properties");
+	private PersistentTypedProperties properties;
+
+	@Before
+	public void createFile() {
+		file.delete();
+		properties = new PersistentTypedProperties(file);
+		properties.setAtomicStore(true);
+		properties.setSyncPolicy(PersistentTypedProperties.SyncPolicy.FILE_AND_DIRECTORY);
+	}
+
+	@Test
+	public void store() {
+		properties.set("Name", "Duns");
+		properties.set("author{tel}", 9624);
+		properties.set("Name", "Tony");
+
+		TypedProperties stored = new PersistentTypedProperties(file, true);
+		org.junit.Assert.assertEquals("Tony", stored.get("Name", ""));
+	}
+
+	@Test
+	public void shortName() {
+		File shortFile = new File(dir, "a");
+		shortFile.delete();
+		PersistentTypedProperties shortProperties = new PersistentTypedProperties(
+				shortFile);
+		shortProperties.setAtomicStore(true);
+		shortProperties.set("Name", "Duns");
+
+		TypedProperties stored = new PersistentTypedProperties(shortFile, true);
+		org.junit.Assert.assertEquals("Duns", stored.get("Name", ""));
+	}
+
+	@Test
+	public void noTemporaryFiles() {
+		for (int i = 0; i < 10; i++) {
+			properties.set("Key", i);
+		}
+		String[] files = dir.list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".tmp");
+			}
+		});
+		org.junit.Assert.assertEquals(0, files.length);
+	}
+}
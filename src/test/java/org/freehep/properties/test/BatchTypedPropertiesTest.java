@@ -0,0 +1,81 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.freehep.properties.TypedProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class BatchTypedPropertiesTest {
+
+	private File file = new File("BatchProperties.properties");
+	private TypedProperties properties;
+	private int events;
+
+	@Before
+	public void createFile() {
+		file.delete();
+		properties = new PersistentTypedProperties(file);
+		events = 0;
+		properties.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				events++;
+			}
+		});
+	}
+
+	@Test
+	public void withoutBatch() {
+		for (int i = 0; i < 10; i++) {
+			properties.set("Key" + i, i);
+		}
+		org.junit.Assert.assertEquals(10, events);
+	}
+
+	@Test
+	public void batch() {
+		try (TypedProperties.Batch batch = properties.batch()) {
+			for (int i = 0; i < 10; i++) {
+				properties.set("Key" + i, i);
+			}
+			org.junit.Assert.assertEquals(0, events);
+		}
+		org.junit.Assert.assertEquals(1, events);
+
+		TypedProperties stored = new PersistentTypedProperties(file, true);
+		for (int i = 0; i < 10; i++) {
+			org.junit.Assert.assertEquals(i, stored.get("Key" + i, -1));
+		}
+	}
+
+	@Test
+	public void nestedBatch() {
+		properties.beginBatch();
+		properties.set("Name", "Duns");
+		properties.beginBatch();
+		properties.set("Telephone", 123456);
+		properties.commit();
+		org.junit.Assert.assertEquals(0, events);
+		properties.commit();
+		org.junit.Assert.assertEquals(1, events);
+	}
+
+	@Test
+	public void emptyBatch() {
+		properties.batch().commit();
+		org.junit.Assert.assertEquals(0, events);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void commitWithoutBatch() {
+		properties.commit();
+	}
+}
@@ -0,0 +1,107 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class BinarySnapshotTypedPropertiesTest {
+
+	private File file = new File("target",
+			"BinarySnapshotProperties.properties");
+	private File sidecar = new File(file.getPath() + ".tpbin");
+	private PersistentTypedProperties writer;
+
+	@Before
+	public void createFile() throws IOException {
+		file.delete();
+		sidecar.delete();
+		writer = new PersistentTypedProperties(file);
+		writer.setSnapshot(true);
+		writer.set("Name", "Duns");
+		writer.set("Telephone", 123456);
+		writer.set("table{1}{Dir}", new File("dir"));
+		writer.set("IntegerList", Arrays.asList(1, 2, 3));
+	}
+
+	@After
+	public void closeFile() throws IOException {
+		writer.close();
+		writer.setSnapshot(false);
+		file.delete();
+	}
+
+	@Test
+	public void written() throws IOException {
+		org.junit.Assert.assertTrue(writer.isSnapshot());
+		org.junit.Assert.assertTrue(sidecar.exists());
+
+		PersistentTypedProperties reader = new PersistentTypedProperties(file,
+				true);
+		org.junit.Assert.assertEquals("Duns", reader.get("Name", ""));
+		org.junit.Assert.assertEquals(123456, reader.get("Telephone", 0));
+		org.junit.Assert.assertEquals(new File("dir"), reader.get(
+				"table{1}{Dir}", (File) null));
+		org.junit.Assert.assertEquals(Arrays.asList(1, 2, 3), reader.get(
+				"IntegerList", (List<Integer>) null));
+		reader.close();
+	}
+
+	@Test
+	public void outdated() throws IOException {
+		long length = sidecar.length();
+		writer.close();
+		// changed without updating the snapshot
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write("Name=java.lang.String Mark\n".getBytes("ISO-8859-1"));
+		} finally {
+			out.close();
+		}
+		org.junit.Assert.assertEquals(length, sidecar.length());
+
+		PersistentTypedProperties reader = new PersistentTypedProperties(file,
+				true);
+		org.junit.Assert.assertEquals("Mark", reader.get("Name", ""));
+		reader.close();
+	}
+
+	@Test
+	public void validated() throws IOException, InterruptedException {
+		writer.close();
+		// changed without changing length or modification time
+		long modified = file.lastModified();
+		String content = new String(Files.readAllBytes(file.toPath()),
+				"ISO-8859-1");
+		Files.write(file.toPath(), content.replace("Duns", "Mark").getBytes(
+				"ISO-8859-1"));
+		file.setLastModified(modified);
+
+		PersistentTypedProperties reader = new PersistentTypedProperties(file,
+				true);
+		while (!reader.get("Name", "").equals("Mark")) {
+			Thread.sleep(50);
+		}
+		reader.close();
+	}
+
+	@Test
+	public void removed() throws IOException {
+		writer.setSnapshot(false);
+		org.junit.Assert.assertFalse(sidecar.exists());
+		writer.set("Name", "Mark");
+		org.junit.Assert.assertFalse(sidecar.exists());
+	}
+}
@@ -0,0 +1,71 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import org.freehep.properties.TypedProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class CascadeTypedPropertiesTest {
+
+	private TypedProperties site;
+	private TypedProperties cluster;
+	private TypedProperties user;
+	private TypedProperties properties;
+
+	@Before
+	public void createLayers() {
+		site = new TypedProperties();
+		site.set("Name", "site");
+		site.set("pool{threads}", 4);
+		cluster = new TypedProperties(site, false);
+		user = new TypedProperties(cluster, false);
+		properties = new TypedProperties(user, false);
+	}
+
+	@Test
+	public void getFromLastLayer() {
+		org.junit.Assert.assertEquals("site", properties.get("Name", ""));
+		org.junit.Assert.assertEquals(4, properties.get("pool{threads}", 0));
+	}
+
+	@Test
+	public void changeInLastLayer() {
+		org.junit.Assert.assertEquals(4, properties.get("pool{threads}", 0));
+		site.set("pool{threads}", 16);
+		org.junit.Assert.assertEquals(16, properties.get("pool{threads}", 0));
+	}
+
+	@Test
+	public void overrideInMiddleLayer() {
+		org.junit.Assert.assertEquals("site", properties.get("Name", ""));
+		org.junit.Assert.assertEquals(4, properties.get("pool{threads}", 0));
+		cluster.set("Name", "cluster");
+		cluster.set("pool{threads}", 8);
+		org.junit.Assert.assertEquals("cluster", properties.get("Name", ""));
+		org.junit.Assert.assertEquals(8, properties.get("pool{threads}", 0));
+		org.junit.Assert.assertEquals(8, properties.get("pool").get("threads",
+				0));
+	}
+
+	@Test
+	public void removeInMiddleLayer() {
+		cluster.set("pool{threads}", 8);
+		org.junit.Assert.assertEquals(8, properties.get("pool{threads}", 0));
+		cluster.set("pool{threads}", Integer.class, null);
+		org.junit.Assert.assertEquals(4, properties.get("pool{threads}", 0));
+	}
+
+	@Test
+	public void unknownInAllLayers() {
+		org.junit.Assert.assertEquals(1234, properties.get("unknown", 1234));
+		org.junit.Assert.assertNull(properties.getType("unknown"));
+		site.set("unknown", 5678);
+		org.junit.Assert.assertEquals(5678, properties.get("unknown", 1234));
+		org.junit.Assert.assertEquals(Integer.class, properties
+				.getType("unknown"));
+	}
+}
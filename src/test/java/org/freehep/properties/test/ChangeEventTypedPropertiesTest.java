@@ -0,0 +1,196 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.freehep.properties.TypedProperties;
+import org.freehep.properties.TypedPropertyChangeEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class ChangeEventTypedPropertiesTest {
+
+	private TypedProperties properties;
+	private Recorder all;
+
+	private static class Recorder implements PropertyChangeListener {
+		private List<TypedPropertyChangeEvent> events = new ArrayList<TypedPropertyChangeEvent>();
+
+		public void propertyChange(PropertyChangeEvent evt) {
+			events.add((TypedPropertyChangeEvent) evt);
+		}
+
+		private TypedPropertyChangeEvent last() {
+			return events.get(events.size() - 1);
+		}
+	}
+
+	@Before
+	public void createProperties() {
+		properties = new TypedProperties();
+		all = new Recorder();
+		properties.addPropertyChangeListener(all);
+	}
+
+	@Test
+	public void keyAndValues() {
+		properties.set("Name", "first");
+		properties.set("Name", "second");
+		TypedPropertyChangeEvent event = all.last();
+		org.junit.Assert.assertEquals(2, all.events.size());
+		org.junit.Assert.assertSame(properties, event.getSource());
+		org.junit.Assert.assertEquals("Name", event.getKey());
+		org.junit.Assert.assertEquals(String.class, event.getType());
+		org.junit.Assert.assertEquals("first", event.getOldValue());
+		org.junit.Assert.assertEquals("second", event.getNewValue());
+
+		properties.set("Name", String.class, null);
+		org.junit.Assert.assertEquals("second", all.last().getOldValue());
+		org.junit.Assert.assertNull(all.last().getNewValue());
+	}
+
+	@Test
+	public void subTable() {
+		properties.set("table{1}{name}", "first");
+		TypedProperties table = properties.get("table").get("1");
+		Recorder sub = new Recorder();
+		table.addPropertyChangeListener(sub);
+
+		table.set("name", "second");
+		org.junit.Assert.assertEquals("name", sub.last().getKey());
+		org.junit.Assert.assertSame(table, sub.last().getSource());
+		org.junit.Assert.assertEquals("table{1}{name}", all.last().getKey());
+		org.junit.Assert.assertSame(properties, all.last().getSource());
+		org.junit.Assert.assertEquals("first", all.last().getOldValue());
+		org.junit.Assert.assertEquals("second", all.last().getNewValue());
+	}
+
+	@Test
+	public void removedSubTable() {
+		properties.set("table{name}", "first");
+		TypedProperties table = properties.get("table");
+		properties.set("table", TypedProperties.class, null);
+		int size = all.events.size();
+
+		table.set("name", "second");
+		org.junit.Assert.assertEquals(size, all.events.size());
+	}
+
+	@Test
+	public void subTableReplacedByValue() {
+		properties.set("table{name}", "first");
+		TypedProperties table = properties.get("table");
+		properties.set("table", TypedProperties.class, null);
+		properties.set("table", 5);
+		int size = all.events.size();
+
+		table.set("name", "second");
+		org.junit.Assert.assertEquals(size, all.events.size());
+		org.junit.Assert.assertEquals(5, properties.get("table", 0));
+	}
+
+	@Test
+	public void firedWithoutLock() {
+		final List<Boolean> locked = new ArrayList<Boolean>();
+		properties.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				locked.add(Thread.holdsLock(properties));
+			}
+		});
+		// creates table and table{1} on the way
+		properties.set("table{1}{name}", "one");
+		org.junit.Assert.assertEquals(Arrays.asList(false, false, false),
+				locked);
+	}
+
+	@Test
+	public void keyListener() {
+		Recorder name = new Recorder();
+		Recorder entry = new Recorder();
+		properties.addPropertyChangeListener("Name", name);
+		properties.addPropertyChangeListener("table{1}", entry);
+
+		properties.set("Name", "name");
+		properties.set("table{1}{name}", "one");
+		properties.set("table{2}{name}", "two");
+		properties.get("table").get("1").set("size", 4);
+
+		org.junit.Assert.assertEquals(1, name.events.size());
+		org.junit.Assert.assertEquals("Name", name.last().getKey());
+		// creation of table and table{1}, then their properties
+		List<String> keys = new ArrayList<String>();
+		for (TypedPropertyChangeEvent event : entry.events) {
+			keys.add(event.getKey());
+		}
+		org.junit.Assert.assertEquals(Arrays.asList("table", "table{1}",
+				"table{1}{name}", "table{1}{size}"), keys);
+
+		properties.removePropertyChangeListener("table{1}", entry);
+		properties.set("table{1}{name}", "none");
+		org.junit.Assert.assertEquals(4, entry.events.size());
+	}
+
+	@Test
+	public void keyListenerOfReplacedTable() {
+		Recorder entry = new Recorder();
+		properties.set("table{1}{name}", "one");
+		properties.addPropertyChangeListener("table{1}{name}", entry);
+
+		properties.set("table", TypedProperties.class, null);
+		org.junit.Assert.assertEquals(1, entry.events.size());
+		org.junit.Assert.assertEquals("table", entry.last().getKey());
+	}
+
+	@Test
+	public void batch() {
+		Recorder name = new Recorder();
+		properties.addPropertyChangeListener("Name", name);
+		try (TypedProperties.Batch batch = properties.batch()) {
+			properties.set("Name", "first");
+			properties.set("Name", "second");
+			properties.set("Other", 1);
+			org.junit.Assert.assertEquals(0, all.events.size());
+		}
+		org.junit.Assert.assertEquals(1, all.events.size());
+		org.junit.Assert.assertNull(all.last().getKey());
+		org.junit.Assert.assertEquals(2, name.events.size());
+		org.junit.Assert.assertEquals("second", name.last().getNewValue());
+	}
+
+	@Test
+	public void batchOfOne() {
+		try (TypedProperties.Batch batch = properties.batch()) {
+			properties.set("Name", "first");
+		}
+		org.junit.Assert.assertEquals(1, all.events.size());
+		org.junit.Assert.assertEquals("Name", all.last().getKey());
+	}
+
+	@Test
+	public void storeSubTableChange() throws IOException {
+		File file = new File("target", "EventProperties.properties");
+		file.delete();
+		PersistentTypedProperties persistent = new PersistentTypedProperties(
+				file);
+		persistent.set("table{name}", "first");
+		persistent.get("table").set("name", "second");
+		persistent.close();
+
+		PersistentTypedProperties reread = new PersistentTypedProperties(file,
+				true);
+		org.junit.Assert.assertEquals("second", reread.get("table{name}", ""));
+		reread.close();
+		file.delete();
+	}
+}
@@ -0,0 +1,117 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.freehep.properties.TypedProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class ConcurrentTypedPropertiesTest {
+
+	private static final int THREADS = 4;
+	private static final int CHANGES = 20000;
+
+	private TypedProperties defaults;
+	private TypedProperties properties;
+	private AtomicReference<Throwable> failure;
+
+	@Before
+	public void createProperties() {
+		defaults = new TypedProperties();
+		defaults.set("pool{threads}", 4);
+		properties = new TypedProperties(defaults, false);
+		failure = new AtomicReference<Throwable>();
+	}
+
+	private Thread start(Runnable runnable) {
+		Thread thread = new Thread(runnable);
+		thread.start();
+		return thread;
+	}
+
+	private void join(List<Thread> threads) throws InterruptedException {
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+
+	@Test
+	public void readWhileWriting() throws InterruptedException {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			threads.add(start(new Runnable() {
+				public void run() {
+					try {
+						for (int i = 0; i < CHANGES; i++) {
+							int threads = properties.get("pool{threads}", -1);
+							if ((threads != 4) && (threads != 8)) {
+								throw new AssertionError("pool{threads} = "
+										+ threads);
+							}
+							String name = properties.get("Name", "none");
+							if (!name.equals("none") && !name.startsWith("Name")) {
+								throw new AssertionError("Name = " + name);
+							}
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			}));
+		}
+		threads.add(start(new Runnable() {
+			public void run() {
+				try {
+					for (int i = 0; i < CHANGES; i++) {
+						properties.set("pool{threads}", i % 2 == 0 ? 8 : 4);
+						if (i % 3 == 0) {
+							properties.set("Name", String.class, null);
+						} else {
+							properties.set("Name", "Name" + i);
+						}
+					}
+				} catch (Throwable e) {
+					failure.set(e);
+				}
+			}
+		}));
+		join(threads);
+	}
+
+	@Test
+	public void writeFromManyThreads() throws InterruptedException {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			final int n = t;
+			threads.add(start(new Runnable() {
+				public void run() {
+					try {
+						for (int i = 0; i < CHANGES / 10; i++) {
+							properties.set("table{" + n + "}{key" + i + "}", i);
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			}));
+		}
+		join(threads);
+
+		for (int t = 0; t < THREADS; t++) {
+			for (int i = 0; i < CHANGES / 10; i++) {
+				org.junit.Assert.assertEquals(i, properties.get("table{" + t
+						+ "}{key" + i + "}", -1));
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.freehep.properties.TypedProperties;
+import org.freehep.properties.TypedPropertyChangeEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class DiffReloadTypedPropertiesTest {
+
+	private static final int KEYS = 100;
+
+	private File file = new File("target",
+			"DiffReloadProperties.properties");
+	private PersistentTypedProperties writer;
+	private PersistentTypedProperties reader;
+	private List<TypedPropertyChangeEvent> events = Collections
+			.synchronizedList(new ArrayList<TypedPropertyChangeEvent>());
+
+	@Before
+	public void createFile() {
+		file.delete();
+		writer = new PersistentTypedProperties(file, null, false, 100);
+		try (TypedProperties.Batch batch = writer.batch()) {
+			for (int i = 0; i < KEYS; i++) {
+				writer.set("Key" + i, i);
+			}
+			writer.set("table{Dir}", new File("dir"));
+			writer.set("other{Dir}", new File("other"));
+		}
+		reader = new PersistentTypedProperties(file, null, true, 100);
+		reader.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				events.add((TypedPropertyChangeEvent) evt);
+			}
+		});
+	}
+
+	@After
+	public void closeFile() throws IOException {
+		writer.close();
+		reader.close();
+		file.delete();
+	}
+
+	private void awaitReload() throws InterruptedException {
+		await(events);
+	}
+
+	private static void await(List<TypedPropertyChangeEvent> events)
+			throws InterruptedException {
+		for (int i = 0; (i < 500) && events.isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		org.junit.Assert.assertEquals(1, events.size());
+	}
+
+	@Test
+	public void singleChange() throws InterruptedException {
+		TypedProperties table = reader.get("table");
+		File dir = reader.get("table{Dir}", (File) null);
+
+		final List<TypedPropertyChangeEvent> keyEvents = Collections
+				.synchronizedList(new ArrayList<TypedPropertyChangeEvent>());
+		reader.addPropertyChangeListener("Key5", new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				keyEvents.add((TypedPropertyChangeEvent) evt);
+			}
+		});
+		writer.set("Key5", 500);
+		awaitReload();
+
+		// a single reload event, even for a single change
+		org.junit.Assert.assertTrue(events.get(0).isReload());
+		org.junit.Assert.assertNull(events.get(0).getKey());
+		org.junit.Assert.assertEquals(1, events.get(0).getChanges().size());
+		TypedPropertyChangeEvent event = events.get(0).getChanges().get(0);
+		await(keyEvents);
+		org.junit.Assert.assertTrue(keyEvents.get(0).isReload());
+		org.junit.Assert.assertEquals("Key5", event.getKey());
+		org.junit.Assert.assertEquals(5, event.getOldValue());
+		org.junit.Assert.assertEquals(500, event.getNewValue());
+		org.junit.Assert.assertEquals(500, reader.get("Key5", 0));
+
+		// unchanged tables and values are kept
+		org.junit.Assert.assertSame(table, reader.get("table"));
+		org.junit.Assert.assertSame(dir, reader.get("table{Dir}", (File) null));
+	}
+
+	@Test
+	public void changeSet() throws InterruptedException {
+		TypedProperties other = reader.get("other");
+		try (TypedProperties.Batch batch = writer.batch()) {
+			writer.set("Key1", Integer.class, null);
+			writer.set("table{Dir}", new File("changed"));
+			writer.set("Added", "added");
+		}
+		awaitReload();
+
+		TypedPropertyChangeEvent event = events.get(0);
+		org.junit.Assert.assertTrue(event.isReload());
+		org.junit.Assert.assertNull(event.getKey());
+		List<String> keys = new ArrayList<String>();
+		for (TypedPropertyChangeEvent change : event.getChanges()) {
+			keys.add(change.getKey());
+		}
+		Collections.sort(keys);
+		org.junit.Assert.assertEquals(3, keys.size());
+		org.junit.Assert.assertEquals("Added", keys.get(0));
+		org.junit.Assert.assertEquals("Key1", keys.get(1));
+		org.junit.Assert.assertEquals("table{Dir}", keys.get(2));
+
+		org.junit.Assert.assertEquals(-1, reader.get("Key1", -1));
+		org.junit.Assert.assertEquals(new File("changed"), reader.get(
+				"table{Dir}", (File) null));
+		org.junit.Assert.assertSame(other, reader.get("other"));
+		org.junit.Assert.assertTrue(reader.get("table").isReadOnly());
+	}
+
+	@Test
+	public void localChangesOnly() throws InterruptedException {
+		final List<TypedPropertyChangeEvent> local = Collections
+				.synchronizedList(new ArrayList<TypedPropertyChangeEvent>());
+		writer.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				local.add((TypedPropertyChangeEvent) evt);
+			}
+		});
+		writer.set("Key7", 700);
+		awaitReload();
+		// the writer does not reload, nor store, its own change
+		Thread.sleep(300);
+		org.junit.Assert.assertEquals(1, local.size());
+		org.junit.Assert.assertFalse(local.get(0).isReload());
+		org.junit.Assert.assertEquals(1, events.size());
+	}
+}
@@ -0,0 +1,76 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.freehep.properties.FileListener;
+import org.freehep.properties.FileMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class FileMonitorTest {
+
+	private File dir = new File("target/monitor");
+	private File file = new File(dir, "Monitored.properties");
+	private FileMonitor monitor;
+	private CountDownLatch created;
+	private CountDownLatch changed;
+	private CountDownLatch removed;
+	private FileListener listener = new FileListener() {
+		public void fileCreated(File f) {
+			created.countDown();
+		}
+
+		public void fileChanged(File f) {
+			changed.countDown();
+		}
+
+		public void fileRemoved(File f) {
+			removed.countDown();
+		}
+	};
+
+	@Before
+	public void createMonitor() {
+		dir.mkdirs();
+		file.delete();
+		created = new CountDownLatch(1);
+		changed = new CountDownLatch(1);
+		removed = new CountDownLatch(1);
+		// polling is far too slow for this test, so events must come from
+		// the watcher
+		monitor = FileMonitor.getInstance(3600000);
+		monitor.addListener(file, listener);
+	}
+
+	@After
+	public void removeListener() {
+		monitor.removeListener(file, listener);
+		file.delete();
+	}
+
+	private void write(String text) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		writer.write(text);
+		writer.close();
+	}
+
+	@Test
+	public void createChangeRemove() throws Exception {
+		write("Name=Duns\n");
+		org.junit.Assert.assertTrue(created.await(10, TimeUnit.SECONDS));
+		write("Name=Mark Donszelmann\n");
+		org.junit.Assert.assertTrue(changed.await(10, TimeUnit.SECONDS));
+		file.delete();
+		org.junit.Assert.assertTrue(removed.await(10, TimeUnit.SECONDS));
+	}
+}
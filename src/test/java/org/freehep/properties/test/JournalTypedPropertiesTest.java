@@ -0,0 +1,179 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.freehep.properties.TypedProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class JournalTypedPropertiesTest {
+
+	private File file = new File("target", "JournalProperties.properties");
+	private File journal = new File(file.getPath() + ".journal");
+	private PersistentTypedProperties properties;
+
+	@Before
+	public void createFile() throws IOException {
+		file.delete();
+		journal.delete();
+		properties = open();
+	}
+
+	@After
+	public void closeFile() throws IOException {
+		properties.close();
+		file.delete();
+		journal.delete();
+	}
+
+	private PersistentTypedProperties open() throws IOException {
+		PersistentTypedProperties p = new PersistentTypedProperties(file);
+		p.setJournal(true);
+		return p;
+	}
+
+	@Test
+	public void replay() throws IOException {
+		properties.set("Name", "Duns");
+		properties.set("author{tel}", 9624);
+		properties.set("StringList", Arrays.asList(new String[] { "One",
+				"Two" }));
+		org.junit.Assert.assertFalse(file.exists());
+		org.junit.Assert.assertTrue(journal.length() > 0);
+
+		TypedProperties replayed = open();
+		org.junit.Assert.assertEquals("Duns", replayed.get("Name", ""));
+		org.junit.Assert.assertEquals(9624, replayed.get("author{tel}", 0));
+		org.junit.Assert.assertEquals(Arrays.asList(new String[] { "One",
+				"Two" }), replayed.get("StringList", (List<String>) null));
+	}
+
+	@Test
+	public void replayRemove() throws IOException {
+		properties.set("Name", "Duns");
+		properties.set("Name", String.class, null);
+		org.junit.Assert.assertEquals("default", open().get("Name",
+				"default"));
+	}
+
+	@Test
+	public void replaySubTable() throws IOException {
+		properties.set("author{tel}", 9624);
+		TypedProperties author = properties.get("author");
+		author.set("name", "Duns");
+		author.set("tel", Integer.class, null);
+		properties.close();
+		org.junit.Assert.assertFalse(file.exists());
+
+		TypedProperties replayed = open();
+		org.junit.Assert.assertEquals("Duns", replayed.get("author{name}", ""));
+		org.junit.Assert.assertEquals(-1, replayed.get("author{tel}", -1));
+	}
+
+	@Test
+	public void tornTail() throws IOException {
+		properties.set("Name", "Duns");
+		long length = journal.length();
+		FileOutputStream out = new FileOutputStream(journal, true);
+		out.write("0badc0de Name\tName=java.lang.String Tony".getBytes());
+		out.close();
+
+		org.junit.Assert.assertEquals("Duns", open().get("Name", ""));
+		org.junit.Assert.assertEquals(length, journal.length());
+	}
+
+	@Test
+	public void readOnlyTornTail() throws IOException {
+		properties.set("Name", "Duns");
+		// the writer would cut the tail
+		properties.close();
+		FileOutputStream out = new FileOutputStream(journal, true);
+		out.write("0badc0de Name\tName=java.lang.String Tony".getBytes());
+		out.close();
+		long length = journal.length();
+
+		PersistentTypedProperties reader = new PersistentTypedProperties(
+				file, true);
+		reader.setJournal(true);
+		org.junit.Assert.assertEquals("Duns", reader.get("Name", ""));
+		org.junit.Assert.assertEquals(length, journal.length());
+		reader.setJournal(false);
+		org.junit.Assert.assertTrue(journal.exists());
+		reader.close();
+	}
+
+	@Test
+	public void readOnlyNoJournal() throws IOException {
+		properties.close();
+		journal.delete();
+
+		PersistentTypedProperties reader = new PersistentTypedProperties(
+				file, true);
+		reader.setJournal(true);
+		org.junit.Assert.assertFalse(journal.exists());
+		reader.close();
+	}
+
+	@Test
+	public void compact() throws IOException {
+		properties.setCompactionThreshold(1000);
+		for (int i = 0; i < 10; i++) {
+			properties.set("Key" + i, i);
+		}
+		properties.compact();
+		org.junit.Assert.assertEquals(0, journal.length());
+
+		TypedProperties stored = new PersistentTypedProperties(file, true);
+		for (int i = 0; i < 10; i++) {
+			org.junit.Assert.assertEquals(i, stored.get("Key" + i, -1));
+		}
+	}
+
+	@Test
+	public void compactKeepsOthers() throws IOException {
+		PersistentTypedProperties other = open();
+		other.set("B", 2);
+		properties.set("A", 1);
+		properties.compact();
+		org.junit.Assert.assertEquals(0, journal.length());
+
+		TypedProperties stored = new PersistentTypedProperties(file, true);
+		org.junit.Assert.assertEquals(1, stored.get("A", -1));
+		org.junit.Assert.assertEquals(2, stored.get("B", -1));
+		org.junit.Assert.assertEquals(2, other.get("B", -1));
+		other.close();
+	}
+
+	@Test
+	public void watched() throws IOException, InterruptedException {
+		PersistentTypedProperties other = open();
+		properties.set("Name", "Duns");
+		while (!other.get("Name", "").equals("Duns")) {
+			Thread.sleep(50);
+		}
+		other.close();
+	}
+
+	@Test
+	public void compactInBackground() throws IOException,
+			InterruptedException {
+		properties.setCompactionThreshold(5);
+		for (int i = 0; i < 10; i++) {
+			properties.set("Key" + i, i);
+		}
+		while (new PersistentTypedProperties(file, true).get("Key4", -1) != 4) {
+			Thread.sleep(50);
+		}
+	}
+}
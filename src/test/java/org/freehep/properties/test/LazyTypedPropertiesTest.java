@@ -0,0 +1,243 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.freehep.properties.SimpleTypePropertyConverter;
+import org.freehep.properties.TypedProperties;
+import org.freehep.properties.TypedPropertyChangeEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class LazyTypedPropertiesTest {
+
+	private static final AtomicInteger conversions = new AtomicInteger();
+
+	private File file = new File("target", "LazyProperties.properties");
+	private PersistentTypedProperties properties;
+
+	public static final class Counted {
+		private final int count;
+
+		public Counted(int count) {
+			this.count = count;
+		}
+
+		public int getCount() {
+			return count;
+		}
+	}
+
+	@BeforeClass
+	public static void register() {
+		TypedProperties.register(Counted.class,
+				new SimpleTypePropertyConverter<Counted>() {
+					@Override
+					public String toString(Counted value) {
+						return Integer.toString(value.getCount());
+					}
+
+					@Override
+					public Counted toObject(String value) {
+						conversions.incrementAndGet();
+						return new Counted(Integer.parseInt(value));
+					}
+				});
+	}
+
+	@Before
+	public void createFile() throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(("Count=" + Counted.class.getName() + " 7\n"
+					+ "Number=java.lang.Integer 42\n"
+					+ "table{Number}=java.lang.Integer 43\n"
+					+ "Bad=java.lang.Integer abc\n"
+					+ "Name=java.lang.String name\n" + "Untyped=3\n")
+					.getBytes("ISO-8859-1"));
+		} finally {
+			out.close();
+		}
+		conversions.set(0);
+		properties = new PersistentTypedProperties(file, null, false, 10000,
+				null, true);
+	}
+
+	@After
+	public void closeFile() throws IOException {
+		properties.close();
+		file.delete();
+	}
+
+	@Test
+	public void convertOnFirstGet() {
+		org.junit.Assert.assertEquals(0, conversions.get());
+		org.junit.Assert.assertEquals(Counted.class, properties
+				.getType("Count"));
+		org.junit.Assert.assertEquals(0, conversions.get());
+
+		Counted count = properties.get("Count", (Counted) null);
+		org.junit.Assert.assertEquals(7, count.getCount());
+		org.junit.Assert.assertEquals(1, conversions.get());
+		org.junit.Assert.assertSame(count, properties.get("Count",
+				(Counted) null));
+		org.junit.Assert.assertEquals(1, conversions.get());
+	}
+
+	@Test
+	public void get() {
+		org.junit.Assert.assertEquals(42, properties.get("Number", 0));
+		org.junit.Assert.assertEquals(43, properties.get("table{Number}", 0));
+		org.junit.Assert.assertEquals(43, properties.get("table").get(
+				"Number", 0));
+		org.junit.Assert.assertEquals("name", properties.get("Name", ""));
+		org.junit.Assert.assertEquals(Integer.class, properties
+				.getType("Untyped"));
+		org.junit.Assert.assertEquals(3, properties.get("Untyped", 0));
+	}
+
+	@Test
+	public void badValue() {
+		org.junit.Assert.assertEquals(Integer.class, properties.getType("Bad"));
+		org.junit.Assert.assertEquals(-1, properties.get("Bad", -1));
+		org.junit.Assert.assertEquals(-1, properties.get("Bad", -1));
+	}
+
+	@Test
+	public void convertOnce() throws Exception {
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Counted> results = new ArrayList<Counted>();
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					Counted count = properties.get("Count", (Counted) null);
+					synchronized (results) {
+						results.add(count);
+					}
+				}
+			});
+			thread.start();
+			readers.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : readers) {
+			thread.join();
+		}
+
+		org.junit.Assert.assertEquals(1, conversions.get());
+		org.junit.Assert.assertEquals(threads, results.size());
+		for (Counted count : results) {
+			org.junit.Assert.assertSame(results.get(0), count);
+		}
+	}
+
+	@Test
+	public void storeWithoutConverting() throws IOException {
+		properties.set("Name", "other");
+
+		Properties p = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			p.load(in);
+		} finally {
+			in.close();
+		}
+		org.junit.Assert.assertEquals(Counted.class.getName() + " 7", p
+				.getProperty("Count"));
+		org.junit.Assert.assertEquals("java.lang.Integer abc", p
+				.getProperty("Bad"));
+		org.junit.Assert.assertEquals("java.lang.String other", p
+				.getProperty("Name"));
+		org.junit.Assert.assertEquals(0, conversions.get());
+	}
+
+	@Test
+	public void reloadWithoutConverting() throws Exception {
+		final List<TypedPropertyChangeEvent> events = Collections
+				.synchronizedList(new ArrayList<TypedPropertyChangeEvent>());
+		properties.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				events.add((TypedPropertyChangeEvent) evt);
+			}
+		});
+		// replace the file as a whole, so it is reloaded once
+		File tmp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try {
+			out.write(("Count=" + Counted.class.getName() + " 8\n"
+					+ "Number=java.lang.Integer 42\n")
+					.getBytes("ISO-8859-1"));
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		for (int i = 0; (i < 500) && events.isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		org.junit.Assert.assertEquals(1, events.size());
+		org.junit.Assert.assertEquals(0, conversions.get());
+
+		for (TypedPropertyChangeEvent change : events.get(0).getChanges()) {
+			if ("Count".equals(change.getKey())) {
+				org.junit.Assert.assertEquals(8, ((Counted) change
+						.getNewValue()).getCount());
+			}
+		}
+		org.junit.Assert.assertEquals(1, conversions.get());
+	}
+
+	@Test
+	public void badValueShowsDefault() throws IOException {
+		TypedProperties defaults = new TypedProperties();
+		defaults.set("Bad", 8080);
+		PersistentTypedProperties eager = new PersistentTypedProperties(file,
+				defaults, true, 10000, null, false);
+		PersistentTypedProperties lazy = new PersistentTypedProperties(file,
+				defaults, true, 10000, null, true);
+		org.junit.Assert.assertEquals(8080, eager.get("Bad", -1));
+		org.junit.Assert.assertEquals(8080, lazy.snapshot().get("Bad", -1));
+		org.junit.Assert.assertEquals(8080, lazy.get("Bad", -1));
+		org.junit.Assert.assertEquals(Integer.class, lazy.getType("Bad"));
+		eager.close();
+		lazy.close();
+	}
+
+	@Test
+	public void snapshot() {
+		TypedProperties snapshot = properties.snapshot();
+		org.junit.Assert.assertEquals(7, snapshot.get("Count", (Counted) null)
+				.getCount());
+		org.junit.Assert.assertEquals(43, snapshot.get("table{Number}", 0));
+		org.junit.Assert.assertEquals(-1, snapshot.get("Bad", -1));
+	}
+}
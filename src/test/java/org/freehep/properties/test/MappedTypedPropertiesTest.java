@@ -0,0 +1,63 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class MappedTypedPropertiesTest {
+
+	// large enough to be mapped
+	private static final int KEYS = 40000;
+
+	private File dir = new File("target/mapped");
+	private File file = new File(dir, "MappedProperties.properties");
+
+	@Before
+	public void createFile() throws IOException {
+		dir.mkdirs();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+				"ISO-8859-1");
+		try {
+			writer.write("#large file\n");
+			for (int i = 0; i < KEYS; i++) {
+				writer.write("Key" + i + "=java.lang.Integer " + i + "\n");
+				writer.write("Name" + i + "=java.lang.String value number " + i
+						+ "\n");
+			}
+		} finally {
+			writer.close();
+		}
+		org.junit.Assert.assertTrue(file.length() >= 1 << 20);
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Test
+	public void load() throws IOException {
+		PersistentTypedProperties properties = new PersistentTypedProperties(
+				file, true);
+		org.junit.Assert.assertEquals(0, properties.get("Key0", -1));
+		org.junit.Assert.assertEquals(KEYS - 1, properties.get("Key"
+				+ (KEYS - 1), -1));
+		org.junit.Assert.assertEquals("value number 123", properties.get(
+				"Name123", ""));
+		org.junit.Assert.assertEquals("value number " + (KEYS - 1), properties
+				.get("Name" + (KEYS - 1), ""));
+		properties.close();
+	}
+}
@@ -4,6 +4,8 @@ package org.freehep.properties.test;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.freehep.properties.PersistentTypedProperties;
 import org.freehep.properties.TypedProperties;
@@ -82,4 +84,38 @@ public class NonTypedPropertiesTest {
 				"http://java.freehep.org/TypedProperties"), properties.get(
 				"URL", new URL("file:")));
 	}
+
+	@Test
+	public void conversionRemembered() {
+		File file = properties.get("FileName", new File(""));
+		org.junit.Assert.assertSame(file, properties.get("FileName", new File(
+				"")));
+		org.junit.Assert.assertEquals("TestFileName", properties.get(
+				"FileName", ""));
+
+		TypedProperties table = new TypedProperties();
+		table.set("Telephone", String.class, "123");
+		org.junit.Assert.assertEquals(123, table.get("Telephone", 0));
+		table.set("Telephone", String.class, "456");
+		org.junit.Assert.assertEquals(456, table.get("Telephone", 0));
+		TypedProperties snapshot = table.snapshot();
+		org.junit.Assert.assertSame(snapshot.get("Telephone", (Long) 0L),
+				snapshot.get("Telephone", (Long) 0L));
+	}
+
+	@Test
+	public void schema() {
+		Map<String, Class<?>> schema = new HashMap<String, Class<?>>();
+		schema.put("Telephone", String.class);
+		schema.put("Age", Double.class);
+		TypedProperties typed = new PersistentTypedProperties(new File(
+				testFileName), null, true, 10000, schema);
+		org.junit.Assert.assertEquals(String.class, typed.getType("Telephone"));
+		org.junit.Assert.assertEquals("123456", typed.get("Telephone", ""));
+		org.junit.Assert.assertEquals(Double.class, typed.getType("Age"));
+		org.junit.Assert.assertEquals(42.7, typed.get("Age", 0.0), 0.0);
+		// not in the schema
+		org.junit.Assert.assertEquals(String.class, typed.getType("Programmer"));
+		org.junit.Assert.assertTrue(typed.get("Programmer", false));
+	}
 }
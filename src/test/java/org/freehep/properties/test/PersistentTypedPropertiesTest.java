@@ -2,6 +2,7 @@
 package org.freehep.properties.test;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -84,6 +85,25 @@ public class PersistentTypedPropertiesTest {
 		org.junit.Assert.assertEquals(007, properties.get("Telephone", 1234));
 	}
 
+	@Test
+	public void setLong() {
+		properties.set("Counter", 12345678901L);
+		org.junit.Assert.assertEquals(12345678901L, properties.get("Counter", 0L));
+		org.junit.Assert.assertEquals(Long.class, properties.getType("Counter"));
+	}
+
+	@Test
+	public void setDouble() {
+		properties.set("Ratio", 0.125);
+		org.junit.Assert.assertEquals(0.125, properties.get("Ratio", 0.0), 0.0);
+		org.junit.Assert.assertEquals(Double.class, properties.getType("Ratio"));
+	}
+
+	@Test
+	public void getWrongLong() {
+		org.junit.Assert.assertEquals(1234L, properties.get("unknown", 1234L));
+	}
+
 	@Test
 	public void setBoolean() {
 		properties.set("Programmer", false);
@@ -251,4 +271,22 @@ public class PersistentTypedPropertiesTest {
 		Assert.assertEquals(list, properties.get("FloatList",
 				(List<Float>) null));
 	}
+
+	@Test
+	public void listInTable() throws IOException {
+		File file = new File("SetProperties.properties");
+		List<String> list = Arrays.asList(new String[] { "a", "b" });
+		properties.set("table{name}", List.class, list);
+
+		PersistentTypedProperties eager = new PersistentTypedProperties(file, true);
+		Assert.assertEquals(list, eager.get("table{name}", (List<String>) null));
+		Assert.assertEquals(null, eager.get("table{name[0]}", (String) null));
+		eager.close();
+
+		PersistentTypedProperties lazy = new PersistentTypedProperties(file, null, true,
+				10000, null, true);
+		Assert.assertEquals(list, lazy.get("table{name}", (List<String>) null));
+		Assert.assertEquals(null, lazy.get("table{name[0]}", (String) null));
+		lazy.close();
+	}
 }
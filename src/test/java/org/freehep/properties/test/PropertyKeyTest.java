@@ -0,0 +1,77 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import org.freehep.properties.PropertyKey;
+import org.freehep.properties.TypedProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class PropertyKeyTest {
+
+	private static final PropertyKey<Integer> THREADS = PropertyKey.of(
+			"pool{threads}", Integer.class, 8);
+	private static final PropertyKey<String> NAME = PropertyKey.of("Name",
+			String.class, null);
+	private static final PropertyKey<Double> RATIO = PropertyKey.of("Ratio",
+			Double.class, 0.5);
+
+	private TypedProperties defaults;
+	private TypedProperties properties;
+
+	@Before
+	public void createProperties() {
+		defaults = new TypedProperties();
+		properties = new TypedProperties(defaults, false);
+	}
+
+	@Test
+	public void getDefault() {
+		org.junit.Assert.assertEquals(8, (int) properties.get(THREADS));
+		org.junit.Assert.assertNull(properties.get(NAME));
+	}
+
+	@Test
+	public void getAfterChanges() {
+		org.junit.Assert.assertEquals(8, (int) properties.get(THREADS));
+		defaults.set("pool{threads}", 4);
+		org.junit.Assert.assertEquals(4, (int) properties.get(THREADS));
+		properties.set(THREADS, 16);
+		org.junit.Assert.assertEquals(16, (int) properties.get(THREADS));
+		org.junit.Assert.assertEquals(16, properties.get("pool{threads}", 0));
+		properties.set(THREADS, null);
+		org.junit.Assert.assertEquals(4, (int) properties.get(THREADS));
+	}
+
+	@Test
+	public void getFromSeveralTables() {
+		TypedProperties other = new TypedProperties();
+		other.set("Name", "other");
+		properties.set("Name", "properties");
+		org.junit.Assert.assertEquals("properties", properties.get(NAME));
+		org.junit.Assert.assertEquals("other", other.get(NAME));
+		org.junit.Assert.assertEquals("properties", properties.get(NAME));
+	}
+
+	@Test
+	public void untyped() {
+		properties.set("Ratio", String.class, "0.25");
+		org.junit.Assert.assertEquals(0.25, properties.get(RATIO), 0.0);
+	}
+
+	@Test
+	public void snapshot() {
+		properties.set(THREADS, 2);
+		org.junit.Assert.assertEquals(2, (int) properties.snapshot().get(
+				THREADS));
+	}
+
+	@Test(expected = ClassCastException.class)
+	public void setWrongType() {
+		properties.set("Name", 1234);
+		properties.set(NAME, "Duns");
+	}
+}
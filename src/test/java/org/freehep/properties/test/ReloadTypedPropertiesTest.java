@@ -0,0 +1,92 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.freehep.properties.TypedProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class ReloadTypedPropertiesTest {
+
+	private static final int KEYS = 100;
+	private static final int GENERATIONS = 50;
+
+	private File file = new File("target", "ReloadProperties.properties");
+	private PersistentTypedProperties writer;
+	private PersistentTypedProperties reader;
+	private volatile boolean done;
+
+	@Before
+	public void createFile() {
+		file.delete();
+		writer = new PersistentTypedProperties(file);
+		write(0);
+		reader = new PersistentTypedProperties(file, true);
+	}
+
+	@After
+	public void closeFile() throws IOException {
+		writer.close();
+		reader.close();
+		file.delete();
+	}
+
+	private void write(int generation) {
+		try (TypedProperties.Batch batch = writer.batch()) {
+			for (int i = 0; i < KEYS; i++) {
+				writer.set("Key" + i, generation);
+				writer.set("table{Key" + i + "}", generation);
+			}
+		}
+	}
+
+	@Test
+	public void neverMissing() throws Exception {
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (!done) {
+						for (int i = 0; i < KEYS; i++) {
+							if ((reader.get("Key" + i, -1) < 0)
+									|| (reader.get("table{Key" + i + "}", -1) < 0)) {
+								throw new AssertionError("Key" + i
+										+ " missing during reload");
+							}
+						}
+					}
+				} catch (Throwable e) {
+					failure.set(e);
+				}
+			}
+		});
+		thread.start();
+
+		for (int generation = 1; generation <= GENERATIONS; generation++) {
+			write(generation);
+			Thread.sleep(10);
+		}
+		for (int i = 0; (i < 500)
+				&& (reader.get("Key0", -1) != GENERATIONS); i++) {
+			Thread.sleep(10);
+		}
+		done = true;
+		thread.join();
+
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		org.junit.Assert.assertEquals(GENERATIONS, reader.get("Key0", -1));
+		org.junit.Assert.assertEquals(GENERATIONS, reader.get("table{Key"
+				+ (KEYS - 1) + "}", -1));
+	}
+}
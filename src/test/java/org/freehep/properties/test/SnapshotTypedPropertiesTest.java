@@ -0,0 +1,94 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.freehep.properties.TypedProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class SnapshotTypedPropertiesTest {
+
+	private TypedProperties site;
+	private TypedProperties properties;
+	private TypedProperties snapshot;
+
+	@Before
+	public void createSnapshot() {
+		site = new TypedProperties();
+		site.set("Name", "site");
+		site.set("pool{threads}", 4);
+		site.set("pool{name}", "workers");
+		site.set("Untyped", String.class, "42");
+		properties = new TypedProperties(site, false);
+		properties.set("Name", "user");
+		properties.set("pool{threads}", 8);
+		properties.set("author{tel}{home}", 123456L);
+		properties.set("List", Arrays.asList("a", "b"));
+		snapshot = properties.snapshot();
+	}
+
+	@Test
+	public void get() {
+		org.junit.Assert.assertEquals("user", snapshot.get("Name", ""));
+		org.junit.Assert.assertEquals(8, snapshot.get("pool{threads}", 0));
+		org.junit.Assert.assertEquals("workers", snapshot.get("pool{name}", ""));
+		org.junit.Assert.assertEquals(123456L, snapshot.get("author{tel}{home}",
+				0L));
+		org.junit.Assert.assertEquals(1234, snapshot.get("unknown", 1234));
+		org.junit.Assert.assertEquals(Arrays.asList("a", "b"), snapshot.get(
+				"List", (List<String>) null));
+	}
+
+	@Test
+	public void getSubTable() {
+		TypedProperties pool = snapshot.get("pool");
+		org.junit.Assert.assertEquals(8, pool.get("threads", 0));
+		org.junit.Assert.assertEquals("workers", pool.get("name", ""));
+		org.junit.Assert.assertEquals(123456L, snapshot.get("author").get(
+				"tel{home}", 0L));
+		org.junit.Assert.assertTrue(pool.isReadOnly());
+	}
+
+	@Test
+	public void untyped() {
+		org.junit.Assert.assertEquals(42, snapshot.get("Untyped", 0));
+		org.junit.Assert.assertEquals("42", snapshot.get("Untyped", ""));
+		org.junit.Assert.assertEquals(String.class, snapshot.getType("Untyped"));
+	}
+
+	@Test
+	public void getType() {
+		org.junit.Assert.assertEquals(Integer.class, snapshot
+				.getType("pool{threads}"));
+		org.junit.Assert.assertNull(snapshot.getType("unknown"));
+	}
+
+	@Test
+	public void unchangedByLaterChanges() {
+		site.set("pool{name}", "others");
+		properties.set("Name", "changed");
+		org.junit.Assert.assertEquals("user", snapshot.get("Name", ""));
+		org.junit.Assert.assertEquals("workers", snapshot.get("pool{name}", ""));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void set() {
+		snapshot.set("Name", "snapshot");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void setSubTable() {
+		snapshot.get("pool").set("threads", 2);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void changeList() {
+		snapshot.get("List", (List<String>) null).add("c");
+	}
+}
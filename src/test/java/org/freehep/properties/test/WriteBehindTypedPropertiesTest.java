@@ -0,0 +1,96 @@
+// Copyright FreeHEP, 2007-2009
+package org.freehep.properties.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.freehep.properties.PersistentTypedProperties;
+import org.freehep.properties.TypedProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Mark Donszelmann (Mark.Donszelmann@gmail.com)
+ */
+public class WriteBehindTypedPropertiesTest {
+
+	private File file = new File("target",
+			"WriteBehindProperties.properties");
+	private PersistentTypedProperties properties;
+
+	@Before
+	public void createFile() {
+		file.delete();
+		properties = new PersistentTypedProperties(file);
+	}
+
+	@After
+	public void closeFile() throws IOException {
+		properties.close();
+		file.delete();
+	}
+
+	@Test
+	public void flush() throws IOException {
+		properties.setWriteBehind(60000);
+		properties.set("Name", "Duns");
+		properties.set("Telephone", 123456);
+		org.junit.Assert.assertFalse(file.exists());
+
+		properties.flush();
+		TypedProperties stored = new PersistentTypedProperties(file, true);
+		org.junit.Assert.assertEquals("Duns", stored.get("Name", ""));
+		org.junit.Assert.assertEquals(123456, stored.get("Telephone", 0));
+	}
+
+	@Test
+	public void writeBehind() throws InterruptedException {
+		properties.setWriteBehind(100);
+		for (int i = 0; i < 100; i++) {
+			properties.set("Key", i);
+		}
+		while (new PersistentTypedProperties(file, true).get("Key", -1) != 99) {
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void concurrentChanges() throws Exception {
+		properties.setWriteBehind(1);
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final String key = "Key" + t;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 2000; i++) {
+						properties.set(key, i);
+					}
+				}
+			});
+			thread.start();
+			writers.add(thread);
+		}
+		for (Thread thread : writers) {
+			thread.join();
+		}
+		properties.close();
+
+		TypedProperties stored = new PersistentTypedProperties(file, true);
+		for (int t = 0; t < 4; t++) {
+			org.junit.Assert.assertEquals(1999, stored.get("Key" + t, -1));
+		}
+	}
+
+	@Test
+	public void closeStores() throws IOException {
+		properties.setWriteBehind(60000);
+		properties.set("Name", "Duns");
+		properties.close();
+		org.junit.Assert.assertEquals("Duns", new PersistentTypedProperties(
+				file, true).get("Name", ""));
+	}
+}